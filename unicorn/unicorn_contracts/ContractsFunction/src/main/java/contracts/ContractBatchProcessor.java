@@ -0,0 +1,138 @@
+package contracts;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.amazonaws.xray.contexts.SegmentContextExecutors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the messages of an SQS batch concurrently while keeping the order of
+ * messages that share a grouping key (the property id).
+ *
+ * Messages with the same key are handled one after the other on the same
+ * worker; different keys run in parallel up to {@code maxConcurrency}. Once a
+ * message of a group fails, the remaining messages of that group are not
+ * attempted so they can be redelivered in order.
+ */
+public class ContractBatchProcessor {
+
+    private static final Logger LOGGER = LogManager.getLogger(ContractBatchProcessor.class);
+
+    public enum Ordering {
+        /** Every message of the batch is handled in order on the invoking thread. */
+        STRICT,
+        /** Messages are ordered per grouping key, groups run concurrently. */
+        PER_PROPERTY,
+        /** No ordering guarantee, every message runs on its own. */
+        UNORDERED
+    }
+
+    private final Ordering ordering;
+    private final int maxConcurrency;
+    private final ExecutorService executor;
+
+    public ContractBatchProcessor(Ordering ordering, int maxConcurrency) {
+        this.ordering = ordering;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.executor = this.maxConcurrency > 1 && ordering != Ordering.STRICT
+                ? Executors.newFixedThreadPool(this.maxConcurrency, runnable -> {
+                    Thread thread = new Thread(runnable, "contract-batch-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+    }
+
+    public Ordering getOrdering() {
+        return ordering;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Processes the messages and returns the failures keyed by message id, in
+     * the order the messages were received. An empty map means every message
+     * was handled successfully.
+     */
+    public Map<String, RuntimeException> process(List<SQSMessage> messages,
+                                                 Function<SQSMessage, String> keyExtractor,
+                                                 Consumer<SQSMessage> handler) {
+        Map<String, RuntimeException> failures = new ConcurrentHashMap<>();
+        List<List<SQSMessage>> groups = group(messages, keyExtractor);
+
+        if (executor == null || groups.size() == 1) {
+            groups.forEach(group -> processGroup(group, handler, failures));
+        } else {
+            LOGGER.debug("Processing {} messages in {} groups with concurrency {}",
+                    messages.size(), groups.size(), maxConcurrency);
+            // propagate the X-Ray segment of the invocation to the worker threads
+            Executor tracedExecutor = SegmentContextExecutors.newSegmentContextExecutor(executor);
+            CompletableFuture.allOf(groups.stream()
+                            .map(group -> CompletableFuture.runAsync(
+                                    () -> processGroup(group, handler, failures), tracedExecutor))
+                            .toArray(CompletableFuture[]::new))
+                    .join();
+        }
+
+        Map<String, RuntimeException> orderedFailures = new LinkedHashMap<>();
+        for (SQSMessage msg : messages) {
+            RuntimeException failure = failures.get(msg.getMessageId());
+            if (failure != null) {
+                orderedFailures.put(msg.getMessageId(), failure);
+            }
+        }
+        return orderedFailures;
+    }
+
+    private List<List<SQSMessage>> group(List<SQSMessage> messages, Function<SQSMessage, String> keyExtractor) {
+        switch (ordering) {
+            case STRICT:
+                return List.of(messages);
+            case UNORDERED:
+                List<List<SQSMessage>> singles = new ArrayList<>(messages.size());
+                messages.forEach(msg -> singles.add(List.of(msg)));
+                return singles;
+            default:
+                Map<String, List<SQSMessage>> byKey = new LinkedHashMap<>();
+                for (SQSMessage msg : messages) {
+                    String key = keyExtractor.apply(msg);
+                    // messages without a key cannot be ordered against anything, run them alone
+                    byKey.computeIfAbsent(key != null ? key : "#" + msg.getMessageId(), k -> new ArrayList<>())
+                            .add(msg);
+                }
+                return new ArrayList<>(byKey.values());
+        }
+    }
+
+    private void processGroup(List<SQSMessage> group, Consumer<SQSMessage> handler,
+                              Map<String, RuntimeException> failures) {
+        RuntimeException groupFailure = null;
+        for (SQSMessage msg : group) {
+            if (groupFailure != null && ordering != Ordering.UNORDERED) {
+                LOGGER.warn("Skipping message {} after an earlier failure in its group", msg.getMessageId());
+                failures.put(msg.getMessageId(), groupFailure);
+                continue;
+            }
+            try {
+                handler.accept(msg);
+            } catch (RuntimeException e) {
+                groupFailure = e;
+                failures.put(msg.getMessageId(), e);
+            }
+        }
+    }
+}
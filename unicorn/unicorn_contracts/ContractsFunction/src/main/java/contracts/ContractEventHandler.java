@@ -2,82 +2,224 @@ package contracts;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import contracts.idempotency.CachingIdempotencyStore;
+import contracts.idempotency.DynamoDbIdempotencyStore;
+import contracts.idempotency.IdempotencyStore;
+import contracts.idempotency.InMemoryIdempotencyStore;
+import contracts.utils.Clients;
 import contracts.utils.Contract;
-import contracts.utils.ContractStatusEnum;
+import contracts.utils.Json;
+import contracts.utils.Priming;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 import software.amazon.lambda.powertools.tracing.Tracing;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
-public class ContractEventHandler implements RequestHandler<SQSEvent, Void> {
+public class ContractEventHandler implements RequestHandler<SQSEvent, SQSBatchResponse> {
 
     private static final String DDB_TABLE = System.getenv("DYNAMODB_TABLE");
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     private static final Logger LOGGER = LogManager.getLogger(ContractEventHandler.class);
     private static final String HTTP_METHOD_ATTR = "HttpMethod";
+    private static final ContractWritePlan WRITE_PLAN = new ContractWritePlan(DDB_TABLE);
+    private static final ContractBatchProcessor.Ordering BATCH_ORDERING = ContractBatchProcessor.Ordering.valueOf(
+            Optional.ofNullable(System.getenv("BATCH_ORDERING")).orElse("PER_PROPERTY").toUpperCase());
+    private static final int BATCH_MAX_CONCURRENCY = Integer.parseInt(
+            Optional.ofNullable(System.getenv("BATCH_MAX_CONCURRENCY")).orElse("10"));
+    private static final String IDEMPOTENCY_TABLE = System.getenv("IDEMPOTENCY_TABLE");
+    private static final Duration IDEMPOTENCY_TTL = Duration.ofSeconds(Long.parseLong(
+            Optional.ofNullable(System.getenv("IDEMPOTENCY_TTL_SECONDS")).orElse("86400")));
+    // shorter than the queue visibility timeout, so a crashed attempt does not block the redelivery
+    private static final Duration IDEMPOTENCY_IN_PROGRESS_TTL = Duration.ofSeconds(30);
+    private static final int IDEMPOTENCY_CACHE_SIZE = 1_000;
+    private static final String PRIMING_PROPERTY_ID = "priming/priming/priming/0";
+    private static final String PRIMING_CONTRACT = "{\"property_id\": \"" + PRIMING_PROPERTY_ID + "\", "
+            + "\"seller_name\": \"priming\", \"address\": {\"country\": \"priming\", \"city\": \"priming\", "
+            + "\"street\": \"priming\", \"number\": 0}}";
 
     private final DynamoDbClient dynamodbClient;
+    private final ContractBatchProcessor batchProcessor;
+    private final IdempotencyStore idempotencyStore;
+    private final Priming priming;
 
     public ContractEventHandler() {
-        this(DynamoDbClient.builder().build());
+        this(Clients.dynamoDb());
     }
 
     public ContractEventHandler(DynamoDbClient dynamodbClient) {
+        this(dynamodbClient, new ContractBatchProcessor(BATCH_ORDERING, BATCH_MAX_CONCURRENCY),
+                IDEMPOTENCY_TABLE == null
+                        ? new InMemoryIdempotencyStore()
+                        : new CachingIdempotencyStore(
+                                new DynamoDbIdempotencyStore(dynamodbClient, IDEMPOTENCY_TABLE), IDEMPOTENCY_CACHE_SIZE));
+    }
+
+    public ContractEventHandler(DynamoDbClient dynamodbClient, ContractBatchProcessor batchProcessor,
+                                IdempotencyStore idempotencyStore) {
         this.dynamodbClient = dynamodbClient;
+        this.batchProcessor = batchProcessor;
+        this.idempotencyStore = idempotencyStore;
+        this.priming = Priming.register(ContractEventHandler.class.getSimpleName(), this::prime, this::reconnect);
+    }
+
+    /**
+     * Runs a contract through parsing, validation and request building without
+     * sending anything, so the snapshot holds the loaded classes and serializers.
+     */
+    private void prime() {
+        try {
+            Json.readTopLevelText(PRIMING_CONTRACT, "property_id");
+            Contract contract = Json.read(PRIMING_CONTRACT, Contract.class);
+            validateContract(contract);
+            WRITE_PLAN.createRequest(contract, UUID.randomUUID().toString(), Instant.now().toEpochMilli());
+            WRITE_PLAN.approveRequest(contract.getPropertyId(), Instant.now().toEpochMilli());
+            Json.write(contract);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Pooled connections do not survive the snapshot; a cheap read opens a new one
+     * before the first message arrives.
+     */
+    private void reconnect() {
+        dynamodbClient.getItem(GetItemRequest.builder()
+                .tableName(DDB_TABLE)
+                .key(Map.of("property_id", AttributeValue.fromS(PRIMING_PROPERTY_ID)))
+                .build());
     }
 
     @Override
     @Tracing
-    public Void handleRequest(SQSEvent event, Context context) {
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
         if (event == null || event.getRecords() == null) {
             LOGGER.warn("Received null or empty SQS event");
-            return null;
+            return new SQSBatchResponse(List.of());
         }
 
-        for (SQSMessage msg : event.getRecords()) {
-            processMessage(msg);
+        Map<String, RuntimeException> failures = batchProcessor.process(
+                event.getRecords(), this::extractPropertyId, this::processMessage);
+        if (!failures.isEmpty()) {
+            LOGGER.warn("{} of {} messages failed: {}",
+                    failures.size(), event.getRecords().size(), failures.keySet());
+        }
+        // only the failed messages become visible again, the rest of the batch is deleted
+        return new SQSBatchResponse(failures.keySet().stream()
+                .map(SQSBatchResponse.BatchItemFailure::new)
+                .collect(Collectors.toList()));
+    }
+
+    private String extractPropertyId(SQSMessage msg) {
+        try {
+            String propertyId = Json.readTopLevelText(msg.getBody(), "property_id");
+            return propertyId == null || propertyId.isEmpty() ? null : propertyId;
+        } catch (Exception e) {
+            // the message will be rejected when processed, no need to group it
+            return null;
         }
-        return null;
     }
 
     private void processMessage(SQSMessage msg) {
         LOGGER.debug("Processing message: {}", msg.getMessageId());
 
-        try {
-            String httpMethod = extractHttpMethod(msg);
-            String body = msg.getBody();
-
-            if (body == null || body.trim().isEmpty()) {
-                LOGGER.warn("Empty message body for message: {}", msg.getMessageId());
-                return;
-            }
+        if (!idempotencyStore.tryAcquire(msg.getMessageId(), Instant.now().plus(IDEMPOTENCY_IN_PROGRESS_TTL))) {
+            LOGGER.info("Skipping duplicate delivery of message: {}", msg.getMessageId());
+            return;
+        }
 
-            switch (httpMethod.toUpperCase()) {
-                case "POST":
-                    createContract(body);
-                    LOGGER.info("Contract created successfully for message: {}", msg.getMessageId());
-                    break;
-                case "PUT":
-                    updateContract(body);
-                    LOGGER.info("Contract updated successfully for message: {}", msg.getMessageId());
-                    break;
-                default:
-                    LOGGER.warn("Unsupported HTTP method: {} for message: {}", httpMethod, msg.getMessageId());
-            }
+        try {
+            dispatchMessage(msg);
         } catch (Exception e) {
+            // the record is released either way, a completed one would acknowledge the redelivery
+            releaseIdempotencyRecord(msg.getMessageId());
+            if (isPoisonMessage(e)) {
+                // retrying cannot succeed, but the message must reach the DLQ rather than be deleted
+                LOGGER.error("Message {} cannot be processed and goes to the DLQ: {}",
+                        msg.getMessageId(), e.getMessage());
+                throw new PoisonMessageException("Contract message cannot be processed", e);
+            }
             LOGGER.error("Error processing message {}: {}", msg.getMessageId(), e.getMessage(), e);
             throw new RuntimeException("Failed to process contract message", e);
         }
+
+        try {
+            idempotencyStore.complete(msg.getMessageId(), Instant.now().plus(IDEMPOTENCY_TTL));
+        } catch (RuntimeException e) {
+            // the contract is written, the in progress record still covers the visibility timeout
+            LOGGER.warn("Could not record message {} as processed: {}", msg.getMessageId(), e.getMessage());
+        }
+    }
+
+    private void dispatchMessage(SQSMessage msg) throws JsonProcessingException {
+        String httpMethod = extractHttpMethod(msg);
+        String body = msg.getBody();
+
+        if (body == null || body.trim().isEmpty()) {
+            LOGGER.warn("Empty message body for message: {}", msg.getMessageId());
+            return;
+        }
+
+        switch (httpMethod.toUpperCase()) {
+            case "POST":
+                createContract(body);
+                LOGGER.info("Contract created successfully for message: {}", msg.getMessageId());
+                break;
+            case "PUT":
+                updateContract(body);
+                LOGGER.info("Contract updated successfully for message: {}", msg.getMessageId());
+                break;
+            default:
+                LOGGER.warn("Unsupported HTTP method: {} for message: {}", httpMethod, msg.getMessageId());
+        }
+    }
+
+    private void releaseIdempotencyRecord(String messageId) {
+        try {
+            idempotencyStore.release(messageId);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not release idempotency record for message {}: {}", messageId, e.getMessage());
+        }
+    }
+
+    /**
+     * Validation errors, malformed payloads and failed condition checks are
+     * permanent; throttling, service and network errors are worth a retry.
+     */
+    static boolean isPoisonMessage(Exception e) {
+        if (e instanceof JsonProcessingException) {
+            return true;
+        }
+        if (e instanceof IllegalArgumentException || e instanceof IllegalStateException) {
+            // a missing table is a deployment problem, keep the message for a retry
+            return !(e.getCause() instanceof ResourceNotFoundException);
+        }
+        return false;
+    }
+
+    /**
+     * A message that fails the same way on every delivery. It is reported as a
+     * batch item failure like any other, so the redrive policy of the queue
+     * moves it to the DLQ.
+     */
+    static class PoisonMessageException extends RuntimeException {
+        PoisonMessageException(String message, Throwable cause) {
+            super(message, cause);
+        }
     }
 
     private String extractHttpMethod(SQSMessage msg) {
@@ -89,34 +231,11 @@ public class ContractEventHandler implements RequestHandler<SQSEvent, Void> {
 
     @Tracing
     private void createContract(String contractJson) throws JsonProcessingException {
-        Contract contract = OBJECT_MAPPER.readValue(contractJson, Contract.class);
+        Contract contract = Json.read(contractJson, Contract.class);
         validateContract(contract);
 
-        String contractId = UUID.randomUUID().toString();
-        long timestamp = Instant.now().toEpochMilli();
-
-        Map<String, AttributeValue> item = Map.of(
-                "property_id", AttributeValue.builder().s(contract.getPropertyId()).build(),
-                "seller_name", AttributeValue.builder().s(contract.getSellerName()).build(),
-                "contract_created", AttributeValue.builder().n(String.valueOf(timestamp)).build(),
-                "contract_last_modified_on", AttributeValue.builder().n(String.valueOf(timestamp)).build(),
-                "contract_id", AttributeValue.builder().s(contractId).build(),
-                "contract_status", AttributeValue.builder().s(ContractStatusEnum.DRAFT.name()).build(),
-                "address", AttributeValue.builder().m(buildAddressMap(contract.getAddress())).build()
-        );
-
-        Map<String, AttributeValue> expressionValues = Map.of(
-                ":cancelled", AttributeValue.builder().s(ContractStatusEnum.CANCELLED.name()).build(),
-                ":closed", AttributeValue.builder().s(ContractStatusEnum.CLOSED.name()).build(),
-                ":expired", AttributeValue.builder().s(ContractStatusEnum.EXPIRED.name()).build()
-        );
-
-        PutItemRequest request = PutItemRequest.builder()
-                .tableName(DDB_TABLE)
-                .item(item)
-                .conditionExpression("attribute_not_exists(property_id) OR contract_status IN (:cancelled, :closed, :expired)")
-                .expressionAttributeValues(expressionValues)
-                .build();
+        PutItemRequest request = WRITE_PLAN.createRequest(
+                contract, UUID.randomUUID().toString(), Instant.now().toEpochMilli());
 
         try {
             dynamodbClient.putItem(request);
@@ -128,28 +247,12 @@ public class ContractEventHandler implements RequestHandler<SQSEvent, Void> {
 
     @Tracing
     private void updateContract(String contractJson) throws JsonProcessingException {
-        Contract contract = OBJECT_MAPPER.readValue(contractJson, Contract.class);
+        Contract contract = Json.read(contractJson, Contract.class);
         validateContractForUpdate(contract);
 
         LOGGER.info("Updating contract for Property ID: {}", contract.getPropertyId());
 
-        Map<String, AttributeValue> key = Map.of(
-                "property_id", AttributeValue.builder().s(contract.getPropertyId()).build()
-        );
-
-        Map<String, AttributeValue> expressionValues = Map.of(
-                ":draft", AttributeValue.builder().s(ContractStatusEnum.DRAFT.name()).build(),
-                ":approved", AttributeValue.builder().s(ContractStatusEnum.APPROVED.name()).build(),
-                ":modifiedDate", AttributeValue.builder().n(String.valueOf(Instant.now().toEpochMilli())).build()
-        );
-
-        UpdateItemRequest request = UpdateItemRequest.builder()
-                .tableName(DDB_TABLE)
-                .key(key)
-                .updateExpression("SET contract_status = :approved, contract_last_modified_on = :modifiedDate")
-                .expressionAttributeValues(expressionValues)
-                .conditionExpression("attribute_exists(property_id) AND contract_status = :draft")
-                .build();
+        UpdateItemRequest request = WRITE_PLAN.approveRequest(contract.getPropertyId(), Instant.now().toEpochMilli());
 
         try {
             dynamodbClient.updateItem(request);
@@ -185,13 +288,4 @@ public class ContractEventHandler implements RequestHandler<SQSEvent, Void> {
             throw new IllegalArgumentException("Property ID is required for update");
         }
     }
-
-    private Map<String, AttributeValue> buildAddressMap(contracts.utils.Address address) {
-        return Map.of(
-                "country", AttributeValue.builder().s(address.getCountry()).build(),
-                "city", AttributeValue.builder().s(address.getCity()).build(),
-                "street", AttributeValue.builder().s(address.getStreet()).build(),
-                "number", AttributeValue.builder().n(String.valueOf(address.getNumber())).build()
-        );
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,81 @@
+package contracts;
+
+import contracts.utils.Address;
+import contracts.utils.Contract;
+import contracts.utils.ContractStatusEnum;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.Map;
+
+/**
+ * The DynamoDB requests written by {@link ContractEventHandler}. Status values,
+ * expressions and expression value maps never change, so they are built once
+ * per container; each request only adds its key, attributes and timestamp.
+ */
+public final class ContractWritePlan {
+
+    private static final AttributeValue DRAFT = AttributeValue.fromS(ContractStatusEnum.DRAFT.name());
+    private static final AttributeValue APPROVED = AttributeValue.fromS(ContractStatusEnum.APPROVED.name());
+
+    private static final String CREATE_CONDITION =
+            "attribute_not_exists(property_id) OR contract_status IN (:cancelled, :closed, :expired)";
+    private static final Map<String, AttributeValue> CREATE_VALUES = Map.of(
+            ":cancelled", AttributeValue.fromS(ContractStatusEnum.CANCELLED.name()),
+            ":closed", AttributeValue.fromS(ContractStatusEnum.CLOSED.name()),
+            ":expired", AttributeValue.fromS(ContractStatusEnum.EXPIRED.name())
+    );
+
+    private static final String APPROVE_UPDATE =
+            "SET contract_status = :approved, contract_last_modified_on = :modifiedDate";
+    private static final String APPROVE_CONDITION = "attribute_exists(property_id) AND contract_status = :draft";
+
+    private final String tableName;
+
+    public ContractWritePlan(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public PutItemRequest createRequest(Contract contract, String contractId, long timestamp) {
+        AttributeValue time = AttributeValue.fromN(Long.toString(timestamp));
+        Map<String, AttributeValue> item = Map.of(
+                "property_id", AttributeValue.fromS(contract.getPropertyId()),
+                "seller_name", AttributeValue.fromS(contract.getSellerName()),
+                "contract_created", time,
+                "contract_last_modified_on", time,
+                "contract_id", AttributeValue.fromS(contractId),
+                "contract_status", DRAFT,
+                "address", AttributeValue.fromM(addressMap(contract.getAddress()))
+        );
+
+        return PutItemRequest.builder()
+                .tableName(tableName)
+                .item(item)
+                .conditionExpression(CREATE_CONDITION)
+                .expressionAttributeValues(CREATE_VALUES)
+                .build();
+    }
+
+    public UpdateItemRequest approveRequest(String propertyId, long timestamp) {
+        return UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("property_id", AttributeValue.fromS(propertyId)))
+                .updateExpression(APPROVE_UPDATE)
+                .expressionAttributeValues(Map.of(
+                        ":draft", DRAFT,
+                        ":approved", APPROVED,
+                        ":modifiedDate", AttributeValue.fromN(Long.toString(timestamp))))
+                .conditionExpression(APPROVE_CONDITION)
+                .build();
+    }
+
+    private static Map<String, AttributeValue> addressMap(Address address) {
+        return Map.of(
+                "country", AttributeValue.fromS(address.getCountry()),
+                "city", AttributeValue.fromS(address.getCity()),
+                "street", AttributeValue.fromS(address.getStreet()),
+                "number", AttributeValue.fromN(Integer.toString(address.getNumber()))
+        );
+    }
+}
@@ -0,0 +1,63 @@
+package contracts.idempotency;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the most recently completed keys in a bounded LRU in front of another
+ * store, so duplicates delivered to a warm container are rejected without a
+ * round trip to DynamoDB.
+ */
+public class CachingIdempotencyStore implements IdempotencyStore {
+
+    private final IdempotencyStore delegate;
+    private final Clock clock;
+    private final Map<String, Instant> completed;
+
+    public CachingIdempotencyStore(IdempotencyStore delegate, int maxEntries) {
+        this(delegate, maxEntries, Clock.systemUTC());
+    }
+
+    public CachingIdempotencyStore(IdempotencyStore delegate, int maxEntries, Clock clock) {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.completed = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Instant> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public boolean tryAcquire(String key, Instant inProgressExpiry) {
+        synchronized (completed) {
+            Instant expiry = completed.get(key);
+            if (expiry != null) {
+                if (!expiry.isBefore(clock.instant())) {
+                    return false;
+                }
+                completed.remove(key);
+            }
+        }
+        return delegate.tryAcquire(key, inProgressExpiry);
+    }
+
+    @Override
+    public void complete(String key, Instant expiry) {
+        delegate.complete(key, expiry);
+        synchronized (completed) {
+            completed.put(key, expiry);
+        }
+    }
+
+    @Override
+    public void release(String key) {
+        synchronized (completed) {
+            completed.remove(key);
+        }
+        delegate.release(key);
+    }
+}
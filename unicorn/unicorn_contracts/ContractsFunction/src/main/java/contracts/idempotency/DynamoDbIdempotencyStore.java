@@ -0,0 +1,81 @@
+package contracts.idempotency;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Idempotency store backed by a DynamoDB table keyed on {@code id}, with
+ * {@code expiration} (epoch seconds) configured as the table's TTL attribute.
+ * TTL deletion is lazy, so expired records are also overwritten explicitly.
+ */
+public class DynamoDbIdempotencyStore implements IdempotencyStore {
+
+    private static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    private static final String STATUS_COMPLETED = "COMPLETED";
+
+    private final DynamoDbClient dynamodbClient;
+    private final String tableName;
+    private final Clock clock;
+
+    public DynamoDbIdempotencyStore(DynamoDbClient dynamodbClient, String tableName) {
+        this(dynamodbClient, tableName, Clock.systemUTC());
+    }
+
+    public DynamoDbIdempotencyStore(DynamoDbClient dynamodbClient, String tableName, Clock clock) {
+        this.dynamodbClient = dynamodbClient;
+        this.tableName = tableName;
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean tryAcquire(String key, Instant inProgressExpiry) {
+        PutItemRequest request = PutItemRequest.builder()
+                .tableName(tableName)
+                .item(Map.of(
+                        "id", AttributeValue.fromS(key),
+                        "status", AttributeValue.fromS(STATUS_IN_PROGRESS),
+                        "expiration", epochSeconds(inProgressExpiry)))
+                .conditionExpression("attribute_not_exists(id) OR expiration < :now")
+                .expressionAttributeValues(Map.of(":now", epochSeconds(clock.instant())))
+                .build();
+        try {
+            dynamodbClient.putItem(request);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void complete(String key, Instant expiry) {
+        dynamodbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("id", AttributeValue.fromS(key)))
+                .updateExpression("SET #status = :completed, expiration = :expiration")
+                .expressionAttributeNames(Map.of("#status", "status"))
+                .expressionAttributeValues(Map.of(
+                        ":completed", AttributeValue.fromS(STATUS_COMPLETED),
+                        ":expiration", epochSeconds(expiry)))
+                .build());
+    }
+
+    @Override
+    public void release(String key) {
+        dynamodbClient.deleteItem(DeleteItemRequest.builder()
+                .tableName(tableName)
+                .key(Map.of("id", AttributeValue.fromS(key)))
+                .build());
+    }
+
+    private static AttributeValue epochSeconds(Instant instant) {
+        return AttributeValue.fromN(String.valueOf(instant.getEpochSecond()));
+    }
+}
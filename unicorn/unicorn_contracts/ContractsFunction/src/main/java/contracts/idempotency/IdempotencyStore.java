@@ -0,0 +1,27 @@
+package contracts.idempotency;
+
+import java.time.Instant;
+
+/**
+ * Records the keys (SQS message ids) that have already been handled so that
+ * redelivered messages are dropped before they reach the contracts table.
+ */
+public interface IdempotencyStore {
+
+    /**
+     * Marks the key as in progress until {@code inProgressExpiry}.
+     *
+     * @return false when the key is already in progress or completed and not yet expired
+     */
+    boolean tryAcquire(String key, Instant inProgressExpiry);
+
+    /**
+     * Marks the key as completed, duplicates are rejected until {@code expiry}.
+     */
+    void complete(String key, Instant expiry);
+
+    /**
+     * Forgets an in progress key so that a redelivery of the message is processed again.
+     */
+    void release(String key);
+}
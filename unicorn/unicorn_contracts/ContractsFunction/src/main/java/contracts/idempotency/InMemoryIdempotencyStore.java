@@ -0,0 +1,53 @@
+package contracts.idempotency;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Idempotency store kept in the memory of the container. Used when no
+ * idempotency table is configured and for running the handler without AWS.
+ */
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private static final int PURGE_THRESHOLD = 10_000;
+
+    private final Map<String, Instant> records = new ConcurrentHashMap<>();
+    private final Clock clock;
+
+    public InMemoryIdempotencyStore() {
+        this(Clock.systemUTC());
+    }
+
+    public InMemoryIdempotencyStore(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public boolean tryAcquire(String key, Instant inProgressExpiry) {
+        Instant now = clock.instant();
+        if (records.size() > PURGE_THRESHOLD) {
+            records.values().removeIf(expiry -> expiry.isBefore(now));
+        }
+        boolean[] acquired = {false};
+        records.compute(key, (k, expiry) -> {
+            if (expiry != null && !expiry.isBefore(now)) {
+                return expiry;
+            }
+            acquired[0] = true;
+            return inProgressExpiry;
+        });
+        return acquired[0];
+    }
+
+    @Override
+    public void complete(String key, Instant expiry) {
+        records.put(key, expiry);
+    }
+
+    @Override
+    public void release(String key) {
+        records.remove(key);
+    }
+}
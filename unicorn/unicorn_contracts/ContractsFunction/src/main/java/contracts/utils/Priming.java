@@ -0,0 +1,68 @@
+package contracts.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SnapStart (CRaC) hooks of a handler.
+ *
+ * {@code prime} runs before the snapshot is taken and should exercise the code
+ * paths of a request with dummy data, so class loading and serializer lookups
+ * end up in the snapshot. {@code restore} runs when a sandbox is restored from
+ * the snapshot and should re-open the connections that did not survive it.
+ * Neither hook may fail the checkpoint or the restore, errors are only logged.
+ *
+ * Without SnapStart the hooks are never called and only the init time is logged.
+ */
+public final class Priming implements Resource {
+
+    private static final Logger LOGGER = LogManager.getLogger(Priming.class);
+
+    private final String name;
+    private final Runnable prime;
+    private final Runnable restore;
+
+    private Priming(String name, Runnable prime, Runnable restore) {
+        this.name = name;
+        this.prime = prime;
+        this.restore = restore;
+    }
+
+    /**
+     * Registers the hooks with the global CRaC context. The caller must keep the
+     * returned instance, the context only holds a weak reference to it.
+     */
+    public static Priming register(String name, Runnable prime, Runnable restore) {
+        Priming priming = new Priming(name, prime, restore);
+        Core.getGlobalContext().register(priming);
+        LOGGER.info("{} initialised {} ms after JVM start", name,
+                ManagementFactory.getRuntimeMXBean().getUptime());
+        return priming;
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        LOGGER.info("Primed {} for checkpoint in {} ms", name, run(prime, "priming"));
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        LOGGER.info("Restored {} in {} ms", name, run(restore, "restore"));
+    }
+
+    private long run(Runnable hook, String phase) {
+        long start = System.nanoTime();
+        try {
+            hook.run();
+        } catch (RuntimeException e) {
+            LOGGER.warn("{} of {} failed: {}", phase, name, e.getMessage());
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -4,7 +4,6 @@ import java.util.Map;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
@@ -13,8 +12,7 @@ public class ResponseParser {
         Contract parseResponse(Map<String, AttributeValue> queryResponse)
                         throws JsonMappingException, JsonProcessingException {
                 Contract response = new Contract();
-                ObjectMapper objectMapper = new ObjectMapper();
-                Address address = objectMapper.readValue(queryResponse.get("address").s(), Address.class);
+                Address address = Json.read(queryResponse.get("address").s(), Address.class);
                 response.setAddress(address);
                 response.setContractCreated(
                                 Long.valueOf(queryResponse.get("contract_created").s()));
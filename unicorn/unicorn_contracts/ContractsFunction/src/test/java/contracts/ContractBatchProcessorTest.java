@@ -0,0 +1,143 @@
+package contracts;
+
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContractBatchProcessorTest {
+
+    private static final Function<SQSMessage, String> KEY = SQSMessage::getBody;
+
+    @Test
+    public void perPropertyKeepsTheOrderOfEachProperty() {
+        ContractBatchProcessor processor = new ContractBatchProcessor(ContractBatchProcessor.Ordering.PER_PROPERTY, 4);
+        List<SQSMessage> messages = messages("a", "b", "a", "c", "b", "a");
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+
+        Map<String, RuntimeException> failures = processor.process(messages, KEY,
+                msg -> handled.add(msg.getMessageId()));
+
+        assertTrue(failures.isEmpty());
+        assertEquals(List.of("m0", "m2", "m5"), handledWithKey(handled, messages, "a"));
+        assertEquals(List.of("m1", "m4"), handledWithKey(handled, messages, "b"));
+        assertEquals(6, handled.size());
+    }
+
+    @Test
+    public void perPropertyRunsPropertiesConcurrently() {
+        ContractBatchProcessor processor = new ContractBatchProcessor(ContractBatchProcessor.Ordering.PER_PROPERTY, 2);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        Map<String, RuntimeException> failures = processor.process(messages("a", "b"), KEY, msg -> {
+            bothStarted.countDown();
+            try {
+                // the latch only opens when the other property is handled at the same time
+                if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("properties were handled one after the other");
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void perPropertySkipsTheRestOfAFailedProperty() {
+        ContractBatchProcessor processor = new ContractBatchProcessor(ContractBatchProcessor.Ordering.PER_PROPERTY, 4);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+
+        Map<String, RuntimeException> failures = processor.process(messages("a", "b", "a", "b", "a"), KEY, msg -> {
+            handled.add(msg.getMessageId());
+            if (msg.getMessageId().equals("m2")) {
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        assertEquals(List.of("m2", "m4"), new ArrayList<>(failures.keySet()));
+        assertTrue(handled.containsAll(List.of("m0", "m1", "m2", "m3")));
+        assertFalse(handled.contains("m4"));
+    }
+
+    @Test
+    public void messagesWithoutKeyAreNotOrderedAgainstEachOther() {
+        ContractBatchProcessor processor = new ContractBatchProcessor(ContractBatchProcessor.Ordering.PER_PROPERTY, 1);
+        List<String> handled = new ArrayList<>();
+
+        Map<String, RuntimeException> failures = processor.process(messages(null, null), KEY, msg -> {
+            handled.add(msg.getMessageId());
+            if (msg.getMessageId().equals("m0")) {
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        assertEquals(List.of("m0"), new ArrayList<>(failures.keySet()));
+        assertEquals(List.of("m0", "m1"), handled);
+    }
+
+    @Test
+    public void strictHandlesTheBatchInOrderAndStopsAtTheFirstFailure() {
+        ContractBatchProcessor processor = new ContractBatchProcessor(ContractBatchProcessor.Ordering.STRICT, 10);
+        List<String> handled = new ArrayList<>();
+        Thread caller = Thread.currentThread();
+
+        Map<String, RuntimeException> failures = processor.process(messages("a", "b", "c", "d"), KEY, msg -> {
+            assertEquals(caller, Thread.currentThread());
+            handled.add(msg.getMessageId());
+            if (msg.getMessageId().equals("m1")) {
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        assertEquals(List.of("m0", "m1"), handled);
+        assertEquals(List.of("m1", "m2", "m3"), new ArrayList<>(failures.keySet()));
+    }
+
+    @Test
+    public void unorderedHandlesEveryMessageDespiteFailures() {
+        ContractBatchProcessor processor = new ContractBatchProcessor(ContractBatchProcessor.Ordering.UNORDERED, 4);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+
+        Map<String, RuntimeException> failures = processor.process(messages("a", "a", "a"), KEY, msg -> {
+            handled.add(msg.getMessageId());
+            if (!msg.getMessageId().equals("m1")) {
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        assertEquals(3, handled.size());
+        assertEquals(List.of("m0", "m2"), new ArrayList<>(failures.keySet()));
+    }
+
+    private static List<SQSMessage> messages(String... keys) {
+        List<SQSMessage> messages = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            SQSMessage msg = new SQSMessage();
+            msg.setMessageId("m" + i);
+            msg.setBody(keys[i]);
+            messages.add(msg);
+        }
+        return messages;
+    }
+
+    private static List<String> handledWithKey(List<String> handled, List<SQSMessage> messages, String key) {
+        List<String> ids = messages.stream()
+                .filter(msg -> key.equals(msg.getBody()))
+                .map(SQSMessage::getMessageId)
+                .collect(Collectors.toList());
+        return handled.stream().filter(ids::contains).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,170 @@
+package contracts;
+
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.MessageAttribute;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+import com.fasterxml.jackson.core.JsonParseException;
+import contracts.idempotency.InMemoryIdempotencyStore;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContractEventHandlerTest {
+
+    private static final String CONTRACT = "{\"property_id\": \"usa/anytown/main-street/%s\", "
+            + "\"seller_name\": \"John Smith\", \"address\": {\"country\": \"USA\", \"city\": \"Anytown\", "
+            + "\"street\": \"Main Street\", \"number\": %s}}";
+
+    private final List<String> written = new ArrayList<>();
+    private RuntimeException putFailure;
+
+    private InMemoryIdempotencyStore idempotencyStore;
+    private ContractEventHandler handler;
+
+    @Before
+    public void setUp() {
+        DynamoDbClient client = new DynamoDbClient() {
+            @Override
+            public PutItemResponse putItem(PutItemRequest request) {
+                if (putFailure != null) {
+                    throw putFailure;
+                }
+                written.add(request.item().get("property_id").s());
+                return PutItemResponse.builder().build();
+            }
+
+            @Override
+            public UpdateItemResponse updateItem(UpdateItemRequest request) {
+                written.add(request.key().get("property_id").s());
+                return UpdateItemResponse.builder().build();
+            }
+
+            @Override
+            public String serviceName() {
+                return "dynamodb";
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        idempotencyStore = new InMemoryIdempotencyStore();
+        handler = new ContractEventHandler(client,
+                new ContractBatchProcessor(ContractBatchProcessor.Ordering.PER_PROPERTY, 1), idempotencyStore);
+    }
+
+    @Test
+    public void onlyFailedMessagesAreReported() {
+        SQSEvent event = event(
+                message("m1", "POST", String.format(CONTRACT, 1, 1)),
+                message("m2", "POST", "{not json"),
+                message("m3", "PUT", String.format(CONTRACT, 3, 3)));
+
+        SQSBatchResponse response = handler.handleRequest(event, null);
+
+        assertEquals(List.of("m2"), failedIds(response));
+        assertEquals(List.of("usa/anytown/main-street/1", "usa/anytown/main-street/3"), written);
+    }
+
+    @Test
+    public void poisonMessageIsReportedSoItReachesTheDlq() {
+        SQSBatchResponse response = handler.handleRequest(event(message("m1", null, String.format(CONTRACT, 1, 1))), null);
+
+        assertEquals(List.of("m1"), failedIds(response));
+        assertTrue(written.isEmpty());
+        // the redelivery is processed again rather than acknowledged as a duplicate
+        assertTrue(idempotencyStore.tryAcquire("m1", Instant.now().plusSeconds(30)));
+    }
+
+    @Test
+    public void existingContractIsReportedAsPoison() {
+        putFailure = ConditionalCheckFailedException.builder().message("exists").build();
+
+        SQSBatchResponse response = handler.handleRequest(event(message("m1", "POST", String.format(CONTRACT, 1, 1))), null);
+
+        assertEquals(List.of("m1"), failedIds(response));
+        assertTrue(idempotencyStore.tryAcquire("m1", Instant.now().plusSeconds(30)));
+    }
+
+    @Test
+    public void throttledMessageIsRetried() {
+        putFailure = ProvisionedThroughputExceededException.builder().message("throttled").build();
+
+        SQSBatchResponse response = handler.handleRequest(event(message("m1", "POST", String.format(CONTRACT, 1, 1))), null);
+
+        assertEquals(List.of("m1"), failedIds(response));
+        assertTrue(idempotencyStore.tryAcquire("m1", Instant.now().plusSeconds(30)));
+    }
+
+    @Test
+    public void processedMessageIsNotWrittenAgain() {
+        SQSEvent event = event(message("m1", "POST", String.format(CONTRACT, 1, 1)));
+
+        handler.handleRequest(event, null);
+        SQSBatchResponse response = handler.handleRequest(event, null);
+
+        assertTrue(failedIds(response).isEmpty());
+        assertEquals(1, written.size());
+    }
+
+    @Test
+    public void permanentFailuresArePoison() {
+        assertTrue(ContractEventHandler.isPoisonMessage(new JsonParseException(null, "malformed")));
+        assertTrue(ContractEventHandler.isPoisonMessage(new IllegalArgumentException("Seller name is required")));
+        assertTrue(ContractEventHandler.isPoisonMessage(new IllegalStateException("exists",
+                ConditionalCheckFailedException.builder().build())));
+    }
+
+    @Test
+    public void transientFailuresAreNotPoison() {
+        assertFalse(ContractEventHandler.isPoisonMessage(new IllegalArgumentException("Contract not found",
+                ResourceNotFoundException.builder().build())));
+        assertFalse(ContractEventHandler.isPoisonMessage(
+                ProvisionedThroughputExceededException.builder().build()));
+        assertFalse(ContractEventHandler.isPoisonMessage(DynamoDbException.builder().statusCode(500).build()));
+    }
+
+    private static SQSEvent event(SQSMessage... messages) {
+        SQSEvent event = new SQSEvent();
+        event.setRecords(List.of(messages));
+        return event;
+    }
+
+    private static SQSMessage message(String id, String httpMethod, String body) {
+        SQSMessage msg = new SQSMessage();
+        msg.setMessageId(id);
+        msg.setBody(body);
+        if (httpMethod != null) {
+            MessageAttribute attribute = new MessageAttribute();
+            attribute.setDataType("String");
+            attribute.setStringValue(httpMethod);
+            msg.setMessageAttributes(Map.of("HttpMethod", attribute));
+        }
+        return msg;
+    }
+
+    private static List<String> failedIds(SQSBatchResponse response) {
+        return response.getBatchItemFailures().stream()
+                .map(SQSBatchResponse.BatchItemFailure::getItemIdentifier)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,121 @@
+package contracts;
+
+import contracts.utils.Address;
+import contracts.utils.Contract;
+import contracts.utils.ContractStatusEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the contract requests inline, as the handler used to, with
+ * {@link ContractWritePlan}. Run {@link #main} and compare the
+ * {@code gc.alloc.rate.norm} column (bytes allocated per message).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContractWritePlanBenchmark {
+
+    private static final String TABLE = "contracts";
+    private static final String CONTRACT_ID = "617dda8c-e79b-406a-bc5b-3a4712f5e4d7";
+    private static final long TIMESTAMP = 1_700_000_000_000L;
+
+    private final ContractWritePlan plan = new ContractWritePlan(TABLE);
+    private Contract contract;
+
+    @Setup
+    public void setUp() {
+        Address address = new Address();
+        address.setCountry("USA");
+        address.setCity("Anytown");
+        address.setStreet("Main Street");
+        address.setNumber(123);
+        contract = new Contract();
+        contract.setAddress(address);
+        contract.setPropertyId("usa/anytown/main-street/123");
+        contract.setSellerName("John Smith");
+    }
+
+    @Benchmark
+    public PutItemRequest createInline() {
+        Map<String, AttributeValue> item = Map.of(
+                "property_id", AttributeValue.builder().s(contract.getPropertyId()).build(),
+                "seller_name", AttributeValue.builder().s(contract.getSellerName()).build(),
+                "contract_created", AttributeValue.builder().n(String.valueOf(TIMESTAMP)).build(),
+                "contract_last_modified_on", AttributeValue.builder().n(String.valueOf(TIMESTAMP)).build(),
+                "contract_id", AttributeValue.builder().s(CONTRACT_ID).build(),
+                "contract_status", AttributeValue.builder().s(ContractStatusEnum.DRAFT.name()).build(),
+                "address", AttributeValue.builder().m(Map.of(
+                        "country", AttributeValue.builder().s(contract.getAddress().getCountry()).build(),
+                        "city", AttributeValue.builder().s(contract.getAddress().getCity()).build(),
+                        "street", AttributeValue.builder().s(contract.getAddress().getStreet()).build(),
+                        "number", AttributeValue.builder().n(String.valueOf(contract.getAddress().getNumber())).build()
+                )).build()
+        );
+        Map<String, AttributeValue> expressionValues = Map.of(
+                ":cancelled", AttributeValue.builder().s(ContractStatusEnum.CANCELLED.name()).build(),
+                ":closed", AttributeValue.builder().s(ContractStatusEnum.CLOSED.name()).build(),
+                ":expired", AttributeValue.builder().s(ContractStatusEnum.EXPIRED.name()).build()
+        );
+        return PutItemRequest.builder()
+                .tableName(TABLE)
+                .item(item)
+                .conditionExpression("attribute_not_exists(property_id) OR contract_status IN (:cancelled, :closed, :expired)")
+                .expressionAttributeValues(expressionValues)
+                .build();
+    }
+
+    @Benchmark
+    public PutItemRequest createWithPlan() {
+        return plan.createRequest(contract, CONTRACT_ID, TIMESTAMP);
+    }
+
+    @Benchmark
+    public UpdateItemRequest approveInline() {
+        Map<String, AttributeValue> expressionValues = Map.of(
+                ":draft", AttributeValue.builder().s(ContractStatusEnum.DRAFT.name()).build(),
+                ":approved", AttributeValue.builder().s(ContractStatusEnum.APPROVED.name()).build(),
+                ":modifiedDate", AttributeValue.builder().n(String.valueOf(TIMESTAMP)).build()
+        );
+        return UpdateItemRequest.builder()
+                .tableName(TABLE)
+                .key(Map.of("property_id", AttributeValue.builder().s(contract.getPropertyId()).build()))
+                .updateExpression("SET contract_status = :approved, contract_last_modified_on = :modifiedDate")
+                .expressionAttributeValues(expressionValues)
+                .conditionExpression("attribute_exists(property_id) AND contract_status = :draft")
+                .build();
+    }
+
+    @Benchmark
+    public UpdateItemRequest approveWithPlan() {
+        return plan.approveRequest(contract.getPropertyId(), TIMESTAMP);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ContractWritePlanBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
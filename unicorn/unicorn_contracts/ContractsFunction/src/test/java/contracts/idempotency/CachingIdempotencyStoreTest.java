@@ -0,0 +1,91 @@
+package contracts.idempotency;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CachingIdempotencyStoreTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    private final RecordingStore delegate = new RecordingStore(clock);
+    private final CachingIdempotencyStore store = new CachingIdempotencyStore(delegate, 2, clock);
+
+    @Test
+    public void completedKeyIsRejectedWithoutCallingTheDelegate() {
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        store.complete("m1", clock.instant().plusSeconds(3600));
+        delegate.calls.clear();
+
+        assertFalse(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        assertTrue(delegate.calls.isEmpty());
+    }
+
+    @Test
+    public void expiredKeyIsCheckedWithTheDelegate() {
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        store.complete("m1", clock.instant().plusSeconds(60));
+        clock.advanceSeconds(61);
+        delegate.calls.clear();
+
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        assertEquals(List.of("tryAcquire m1"), delegate.calls);
+    }
+
+    @Test
+    public void leastRecentlyUsedKeyIsEvicted() {
+        for (String key : List.of("m1", "m2", "m3")) {
+            store.tryAcquire(key, clock.instant().plusSeconds(30));
+            store.complete(key, clock.instant().plusSeconds(3600));
+        }
+        delegate.calls.clear();
+
+        assertFalse(store.tryAcquire("m3", clock.instant().plusSeconds(30)));
+        assertFalse(store.tryAcquire("m2", clock.instant().plusSeconds(30)));
+        assertTrue(delegate.calls.isEmpty());
+        // evicted from the cache, the delegate still rejects it
+        assertFalse(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        assertEquals(List.of("tryAcquire m1"), delegate.calls);
+    }
+
+    @Test
+    public void releaseReachesTheDelegate() {
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        store.release("m1");
+
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        assertEquals(List.of("tryAcquire m1", "release m1", "tryAcquire m1"), delegate.calls);
+    }
+
+    private static class RecordingStore extends InMemoryIdempotencyStore {
+
+        final List<String> calls = new ArrayList<>();
+
+        RecordingStore(MutableClock clock) {
+            super(clock);
+        }
+
+        @Override
+        public boolean tryAcquire(String key, Instant inProgressExpiry) {
+            calls.add("tryAcquire " + key);
+            return super.tryAcquire(key, inProgressExpiry);
+        }
+
+        @Override
+        public void complete(String key, Instant expiry) {
+            calls.add("complete " + key);
+            super.complete(key, expiry);
+        }
+
+        @Override
+        public void release(String key) {
+            calls.add("release " + key);
+            super.release(key);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package contracts.idempotency;
+
+import org.junit.Test;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DynamoDbIdempotencyStoreTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final List<Object> requests = new ArrayList<>();
+    private boolean conditionFails;
+
+    private final DynamoDbClient client = new DynamoDbClient() {
+        @Override
+        public PutItemResponse putItem(PutItemRequest request) {
+            requests.add(request);
+            if (conditionFails) {
+                throw ConditionalCheckFailedException.builder().message("exists").build();
+            }
+            return PutItemResponse.builder().build();
+        }
+
+        @Override
+        public UpdateItemResponse updateItem(UpdateItemRequest request) {
+            requests.add(request);
+            return UpdateItemResponse.builder().build();
+        }
+
+        @Override
+        public DeleteItemResponse deleteItem(DeleteItemRequest request) {
+            requests.add(request);
+            return DeleteItemResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final DynamoDbIdempotencyStore store =
+            new DynamoDbIdempotencyStore(client, "idempotency", new MutableClock(NOW));
+
+    @Test
+    public void acquireWritesAnInProgressRecordUnlessALiveOneExists() {
+        assertTrue(store.tryAcquire("m1", NOW.plusSeconds(30)));
+
+        PutItemRequest request = (PutItemRequest) requests.get(0);
+        assertEquals("idempotency", request.tableName());
+        assertEquals(Map.of(
+                "id", AttributeValue.fromS("m1"),
+                "status", AttributeValue.fromS("IN_PROGRESS"),
+                "expiration", AttributeValue.fromN(String.valueOf(NOW.getEpochSecond() + 30))), request.item());
+        assertEquals("attribute_not_exists(id) OR expiration < :now", request.conditionExpression());
+        assertEquals(AttributeValue.fromN(String.valueOf(NOW.getEpochSecond())),
+                request.expressionAttributeValues().get(":now"));
+    }
+
+    @Test
+    public void acquireFailsWhenTheConditionFails() {
+        conditionFails = true;
+        assertFalse(store.tryAcquire("m1", NOW.plusSeconds(30)));
+    }
+
+    @Test
+    public void completeMarksTheRecordWithItsExpiry() {
+        store.complete("m1", NOW.plusSeconds(86400));
+
+        UpdateItemRequest request = (UpdateItemRequest) requests.get(0);
+        assertEquals(Map.of("id", AttributeValue.fromS("m1")), request.key());
+        assertEquals(AttributeValue.fromS("COMPLETED"), request.expressionAttributeValues().get(":completed"));
+        assertEquals(AttributeValue.fromN(String.valueOf(NOW.getEpochSecond() + 86400)),
+                request.expressionAttributeValues().get(":expiration"));
+    }
+
+    @Test
+    public void releaseDeletesTheRecord() {
+        store.release("m1");
+
+        DeleteItemRequest request = (DeleteItemRequest) requests.get(0);
+        assertEquals("idempotency", request.tableName());
+        assertEquals(Map.of("id", AttributeValue.fromS("m1")), request.key());
+    }
+}
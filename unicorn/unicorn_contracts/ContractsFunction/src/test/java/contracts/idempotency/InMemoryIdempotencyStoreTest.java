@@ -0,0 +1,45 @@
+package contracts.idempotency;
+
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryIdempotencyStoreTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    private final InMemoryIdempotencyStore store = new InMemoryIdempotencyStore(clock);
+
+    @Test
+    public void keyInProgressIsNotAcquiredTwice() {
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        assertFalse(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        assertTrue(store.tryAcquire("m2", clock.instant().plusSeconds(30)));
+    }
+
+    @Test
+    public void expiredInProgressKeyIsAcquiredAgain() {
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        clock.advanceSeconds(31);
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+    }
+
+    @Test
+    public void completedKeyIsRejectedUntilItExpires() {
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        store.complete("m1", clock.instant().plusSeconds(3600));
+        clock.advanceSeconds(60);
+        assertFalse(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        clock.advanceSeconds(3600);
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+    }
+
+    @Test
+    public void releasedKeyIsAcquiredAgain() {
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+        store.release("m1");
+        assertTrue(store.tryAcquire("m1", clock.instant().plusSeconds(30)));
+    }
+}
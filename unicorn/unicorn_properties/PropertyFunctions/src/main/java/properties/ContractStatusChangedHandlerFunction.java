@@ -1,76 +1,146 @@
 package properties;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import com.amazonaws.services.lambda.runtime.Context;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
 
-import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
-import software.amazon.lambda.powertools.logging.CorrelationIdPathConstants;
-import software.amazon.lambda.powertools.logging.Logging;
-import software.amazon.lambda.powertools.metrics.Metrics;
-import software.amazon.lambda.powertools.metrics.MetricsUtils;
 import software.amazon.lambda.powertools.tracing.Tracing;
-import software.amazon.lambda.powertools.tracing.TracingUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
-import software.amazon.awssdk.services.sfn.SfnClient;
+import software.amazon.awssdk.services.sfn.SfnAsyncClient;
 import software.amazon.awssdk.services.sfn.model.SendTaskSuccessRequest;
+import software.amazon.awssdk.services.sfn.model.TaskTimedOutException;
 
 import schema.unicorn_contracts.contractstatuschanged.AWSEvent;
 import schema.unicorn_contracts.contractstatuschanged.ContractStatusChanged;
 import schema.unicorn_contracts.contractstatuschanged.marshaller.Marshaller;
-
-
-public class ContractStatusChangedHandlerFunction {
+import properties.helper.Clients;
+import properties.helper.Priming;
+import properties.helper.TokenCompletionRegistry;
+
+/**
+ * Saves the contract status changes buffered in SQS, a batch per invocation,
+ * and resumes the approval workflows of approved contracts.
+ *
+ * Each message goes through unmarshal, conditional update and, for an approved
+ * contract, task success, as a chain of futures on the async clients. Messages
+ * run concurrently, at most {@code CONTRACT_STATUS_MAX_IN_FLIGHT} at a time.
+ * The update and the task success stages time out after
+ * {@code CONTRACT_STATUS_UPDATE_TIMEOUT_MS} and {@code TASK_SUCCESS_TIMEOUT_MS}.
+ * Messages that failed a stage are reported back as batch item failures, so
+ * only they are retried.
+ */
+public class ContractStatusChangedHandlerFunction implements RequestHandler<SQSEvent, SQSBatchResponse> {
 
     private static final Logger LOGGER = LogManager.getLogger(ContractStatusChangedHandlerFunction.class);
-    MetricsLogger metricsLogger = MetricsUtils.metricsLogger();
+    private static final String PRIMING_PROPERTY_ID = "priming/priming/priming/0";
+    private static final String PRIMING_EVENT = "{\"detail-type\": \"ContractStatusChanged\", \"source\": \"priming\", "
+            + "\"detail\": {\"contract_id\": \"priming\", \"contract_status\": \"DRAFT\", "
+            + "\"property_id\": \"" + PRIMING_PROPERTY_ID + "\", \"contract_last_modified_on\": 0}}";
+
+    private static final int MAX_IN_FLIGHT = Integer.parseInt(
+            Optional.ofNullable(System.getenv("CONTRACT_STATUS_MAX_IN_FLIGHT")).orElse("25"));
+    private static final long UPDATE_TIMEOUT_MS = Long.parseLong(
+            Optional.ofNullable(System.getenv("CONTRACT_STATUS_UPDATE_TIMEOUT_MS")).orElse("3000"));
+    private static final long TASK_SUCCESS_TIMEOUT_MS = Long.parseLong(
+            Optional.ofNullable(System.getenv("TASK_SUCCESS_TIMEOUT_MS")).orElse("3000"));
 
     final String TABLE_NAME = System.getenv("CONTRACT_STATUS_TABLE");
+    final String TOKEN_TABLE_NAME = System.getenv("TOKEN_COMPLETION_TABLE");
+
+    DynamoDbAsyncClient dynamodbClient = Clients.dynamoDbAsync();
 
-    ObjectMapper objectMapper = new ObjectMapper();
+    SfnAsyncClient sfnClient = Clients.sfnAsync();
 
-    DynamoDbClient dynamodbClient = DynamoDbClient.builder()
-            .build();
+    TokenCompletionRegistry tokens = new TokenCompletionRegistry(dynamodbClient, TOKEN_TABLE_NAME);
 
-    // ADDED: Step Functions client to resume workflow
-    SfnClient sfnClient = SfnClient.builder().build();
+    private final Priming priming = Priming.register(
+            ContractStatusChangedHandlerFunction.class.getSimpleName(), this::prime, this::reconnect);
 
     @Tracing
-    public void handleRequest(InputStream inputStream, OutputStream outputStream,
-                              Context context) throws IOException {
-
-        AWSEvent<ContractStatusChanged> event = Marshaller.unmarshalEvent(inputStream);
-        ContractStatusChanged contractStatusChanged = event.getDetail();
-
-        if (contractStatusChanged != null) {
-            saveContractStatusAndResumeWorkflow(
-                    contractStatusChanged.getPropertyId(),
-                    contractStatusChanged.getContractStatus(),
-                    contractStatusChanged.getContractId(),
-                    contractStatusChanged.getContractLastModifiedOn()
-            );
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent input, Context context) {
+        if (input == null || input.getRecords() == null) {
+            LOGGER.debug("Event has no records, nothing to apply");
+            return new SQSBatchResponse(List.of());
         }
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+        List<CompletableFuture<Void>> results = new ArrayList<>(input.getRecords().size());
+
+        for (SQSEvent.SQSMessage message : input.getRecords()) {
+            inFlight.acquireUninterruptibly();
+            results.add(process(message)
+                    .handle((ignored, error) -> {
+                        inFlight.release();
+                        if (error != null) {
+                            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                            LOGGER.error("Cannot apply message " + message.getMessageId() + ": " + cause, cause);
+                            synchronized (failures) {
+                                failures.add(new SQSBatchResponse.BatchItemFailure(message.getMessageId()));
+                            }
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
 
-        OutputStreamWriter writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
-        writer.write(objectMapper.writeValueAsString("OK"));
-        writer.close();
+        return new SQSBatchResponse(failures);
+    }
+
+    CompletableFuture<Void> process(SQSEvent.SQSMessage message) {
+        ContractStatusChanged contractStatusChanged;
+        try {
+            contractStatusChanged = unmarshal(message.getBody()).getDetail();
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (contractStatusChanged == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String propertyId = contractStatusChanged.getPropertyId();
+        return saveContractStatus(propertyId,
+                        contractStatusChanged.getContractStatus(),
+                        contractStatusChanged.getContractId(),
+                        contractStatusChanged.getContractLastModifiedOn())
+                .thenCompose(item -> item != null && "APPROVED".equals(contractStatusChanged.getContractStatus())
+                        ? resumeStepFunction(propertyId, item)
+                        : CompletableFuture.completedFuture(null));
     }
 
+    /**
+     * Saves the status with one conditional update that returns the whole item,
+     * so the task token of an approved contract needs no second read. An event
+     * older than the saved status is ignored; a replay of the saved one still
+     * resumes the workflow, in case the first attempt could not.
+     *
+     * @return the saved item, null when the event was ignored
+     */
     @Tracing
-    void saveContractStatusAndResumeWorkflow(String propertyId,
-                                             String contractStatus, String contractId, Long contractLastModifiedOn) {
+    CompletableFuture<Map<String, AttributeValue>> saveContractStatus(String propertyId,
+            String contractStatus, String contractId, Long contractLastModifiedOn) {
         Map<String, AttributeValue> key = new HashMap<>();
         key.put("property_id", AttributeValue.fromS(propertyId));
 
@@ -83,55 +153,100 @@ public class ContractStatusChangedHandlerFunction {
                 .key(key)
                 .tableName(TABLE_NAME)
                 .updateExpression("set contract_status=:t, contract_last_modified_on=:m, contract_id=:c")
+                .conditionExpression("attribute_not_exists(contract_last_modified_on) OR contract_last_modified_on < :m")
                 .expressionAttributeValues(expressionAttributeValues)
+                .returnValues(ReturnValue.ALL_NEW)
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
                 .build();
 
-        dynamodbClient.updateItem(updateItemRequest);
+        return dynamodbClient.updateItem(updateItemRequest)
+                .orTimeout(UPDATE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .handle((response, error) -> {
+                    if (error == null) {
+                        return response.attributes();
+                    }
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (!(cause instanceof ConditionalCheckFailedException)) {
+                        throw new CompletionException(cause);
+                    }
+                    Map<String, AttributeValue> item = ((ConditionalCheckFailedException) cause).item();
+                    if (!expressionAttributeValues.get(":m").equals(item.get("contract_last_modified_on"))
+                            || !expressionAttributeValues.get(":t").equals(item.get("contract_status"))) {
+                        LOGGER.info("Ignoring status " + contractStatus + " of property " + propertyId
+                                + ", a newer one is saved");
+                        return null;
+                    }
+                    return item;
+                });
+    }
 
-        // ADDED: Resume Step Functions workflow if status is APPROVED
-        if ("APPROVED".equals(contractStatus)) {
-            resumeStepFunction(propertyId);
+    /**
+     * Resumes the workflow waiting for the contract, unless the stream sync
+     * function already has. A task that is no longer waiting cannot be resumed
+     * by a retry, so it does not fail the message.
+     */
+    private CompletableFuture<Void> resumeStepFunction(String propertyId, Map<String, AttributeValue> item) {
+        if (!item.containsKey("sfn_wait_approved_task_token")) {
+            LOGGER.warn("No task token found for property: " + propertyId);
+            return CompletableFuture.completedFuture(null);
         }
+        String taskToken = item.get("sfn_wait_approved_task_token").s();
+
+        return tokens.complete(propertyId, taskToken,
+                        () -> sfnClient.sendTaskSuccess(taskSuccessRequest(propertyId, taskToken))
+                                .exceptionally(error -> {
+                                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                                    if (cause instanceof TaskTimedOutException) {
+                                        LOGGER.warn("Task is no longer waiting: " + cause.getMessage());
+                                        return null;
+                                    }
+                                    throw new CompletionException(cause);
+                                }))
+                .orTimeout(TASK_SUCCESS_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .thenAccept(outcome -> {
+                    if (outcome == TokenCompletionRegistry.Outcome.COMPLETED) {
+                        LOGGER.info("Resumed Step Functions workflow for property: " + propertyId);
+                    }
+                });
+    }
+
+    private static SendTaskSuccessRequest taskSuccessRequest(String propertyId, String taskToken) {
+        return SendTaskSuccessRequest.builder()
+                .taskToken(taskToken)
+                .output("{\"status\": \"APPROVED\", \"property_id\": \"" + propertyId + "\"}")
+                .build();
     }
 
-    // ADDED: Method to resume Step Functions workflow
-    private void resumeStepFunction(String propertyId) {
+    private static AWSEvent<ContractStatusChanged> unmarshal(String body) throws IOException {
+        return Marshaller.unmarshalEvent(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void prime() {
         try {
-            // Get task token from DynamoDB
-            Map<String, AttributeValue> key = new HashMap<>();
-            key.put("property_id", AttributeValue.builder().s(propertyId).build());
-
-            Map<String, AttributeValue> item = dynamodbClient.getItem(r -> r
-                    .tableName(TABLE_NAME)
-                    .key(key)
-            ).item();
-
-            if (item == null || !item.containsKey("sfn_wait_approved_task_token")) {
-                LOGGER.warn("No task token found for property: " + propertyId);
-                return;
-            }
-
-            String taskToken = item.get("sfn_wait_approved_task_token").s();
-
-            // Resume Step Functions workflow
-            sfnClient.sendTaskSuccess(SendTaskSuccessRequest.builder()
-                    .taskToken(taskToken)
-                    .output("{\"status\": \"APPROVED\", \"property_id\": \"" + propertyId + "\"}")
-                    .build());
-
-            LOGGER.info("Resumed Step Functions workflow for property: " + propertyId);
-        } catch (Exception e) {
-            LOGGER.error("Failed to resume Step Functions workflow: " + e.getMessage(), e);
-            // Don't throw - we don't want to fail the contract status update
+            ContractStatusChanged detail = unmarshal(PRIMING_EVENT).getDetail();
+            taskSuccessRequest(detail.getPropertyId(), "priming");
+            new SQSBatchResponse(List.of(new SQSBatchResponse.BatchItemFailure("priming")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
-    public void setDynamodbClient(DynamoDbClient dynamodbClient) {
+    /**
+     * Reads from the token table, the only one the role may read; the status
+     * table is written through the same client, so its connection is warmed too.
+     */
+    private void reconnect() {
+        dynamodbClient.getItem(r -> r
+                .tableName(TOKEN_TABLE_NAME)
+                .key(Map.of("id", AttributeValue.fromS("priming")))).join();
+    }
+
+    public void setDynamodbClient(DynamoDbAsyncClient dynamodbClient) {
         this.dynamodbClient = dynamodbClient;
+        this.tokens = new TokenCompletionRegistry(dynamodbClient, TOKEN_TABLE_NAME);
     }
 
-    // ADDED: Setter for testing
-    public void setSfnClient(SfnClient sfnClient) {
+    public void setSfnClient(SfnAsyncClient sfnClient) {
         this.sfnClient = sfnClient;
     }
-}
\ No newline at end of file
+}
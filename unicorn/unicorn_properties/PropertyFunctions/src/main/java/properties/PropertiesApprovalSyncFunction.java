@@ -7,103 +7,201 @@ import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
 import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
 import com.amazonaws.services.lambda.runtime.events.models.dynamodb.StreamRecord;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import properties.dao.ContractStatus;
-import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import properties.helper.Clients;
+import properties.helper.Json;
+import properties.helper.Priming;
+import properties.helper.TokenCompletionRegistry;
+import properties.helper.TokenCompletionRegistry.Outcome;
 import software.amazon.awssdk.services.sfn.SfnAsyncClient;
 import software.amazon.awssdk.services.sfn.model.SendTaskSuccessRequest;
+import software.amazon.awssdk.services.sfn.model.TaskTimedOutException;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-
-
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * Resumes the approval workflows of the contracts approved in a batch of
+ * contract status stream records.
+ *
+ * Every record of the batch is looked at. Records that do not resume a
+ * workflow are skipped; the event source mapping can drop them before they
+ * reach the function, see {@code StreamFilterEnabled} in the template. The
+ * SendTaskSuccess calls of a batch run concurrently, at most
+ * {@code TASK_SUCCESS_MAX_IN_FLIGHT} at a time, so a batch takes about as long
+ * as its slowest call. When records fail, the earliest one is reported, and
+ * Lambda retries the batch from there in stream order. Tokens go through the
+ * {@link TokenCompletionRegistry}, so a replayed record or one the contract
+ * status event handler has already resumed sends nothing. The number of
+ * skipped, completed, duplicate and failed records is published as metrics.
+ */
 public class PropertiesApprovalSyncFunction implements RequestHandler<DynamodbEvent, Serializable> {
 
+    private static final int MAX_IN_FLIGHT = Integer.parseInt(
+            Optional.ofNullable(System.getenv("TASK_SUCCESS_MAX_IN_FLIGHT")).orElse("25"));
+    private static final String NAMESPACE = System.getenv("SERVICE_NAMESPACE");
+
     Logger logger = LogManager.getLogger();
-    SfnAsyncClient snfClient = SfnAsyncClient.builder()
-            .httpClientBuilder(NettyNioAsyncHttpClient.builder()
-                    .maxConcurrency(100)
-                    .maxPendingConnectionAcquires(10_000))
-            .build();
+    SfnAsyncClient snfClient = Clients.sfnAsync();
+    TokenCompletionRegistry tokens = new TokenCompletionRegistry(Clients.dynamoDbAsync(),
+            System.getenv("TOKEN_COMPLETION_TABLE"));
+
+    // the Netty pool reconnects on the first send after a restore, there is nothing to re-open
+    private final Priming priming = Priming.register(
+            PropertiesApprovalSyncFunction.class.getSimpleName(), this::prime, () -> { });
 
 
     public StreamsEventResponse handleRequest(DynamodbEvent input, Context context) {
 
-        List<StreamsEventResponse.BatchItemFailure> batchItemFailures = new ArrayList<>();
-        String curRecordSequenceNumber = "";
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        List<String> sequenceNumbers = new ArrayList<>();
+        List<CompletableFuture<Outcome>> results = new ArrayList<>();
+        int skipped = 0;
 
         for (DynamodbEvent.DynamodbStreamRecord dynamodbStreamRecord : input.getRecords()) {
+            String curRecordSequenceNumber = "";
             try {
-                // Process your record
-
                 StreamRecord dynamodbRecord = dynamodbStreamRecord.getDynamodb();
                 curRecordSequenceNumber = dynamodbRecord.getSequenceNumber();
                 Map<String, AttributeValue> newImage = dynamodbRecord.getNewImage();
-                Map<String, AttributeValue> oldImage = dynamodbRecord.getOldImage();
-                if (oldImage == null) {
-                    oldImage = new HashMap<String, AttributeValue>();
-                }
-                if (newImage == null) {
-                    logger.debug("New image is null. Hence return empty stream response");
-                    return new StreamsEventResponse();
-                }
-                // if there is no token do nothing
-                if (newImage.get("sfn_wait_approved_task_token") == null
-                        && oldImage.get("sfn_wait_approved_task_token") == null) {
-                    logger.debug("No task token in both the images. Hence return empty stream response");
-                    return new StreamsEventResponse();
-                }
-
-                // if contract status is approved, send the task token
-
-                if (!newImage.get("contract_status").getS().equalsIgnoreCase("APPROVED")) {
-                    logger.debug("Contract status for property is not APPROVED : " +
-                            newImage.get("property_id").getS());
-                    return new StreamsEventResponse();
+                if (!resumesWorkflow(newImage)) {
+                    skipped++;
+                    continue;
                 }
                 logger.debug("Contract status for property is APPROVED : " +
                         newImage.get("property_id").getS());
 
                 // send task successful token
-                taskSuccessful(newImage.get("sfn_wait_approved_task_token").getS(), newImage);
-
+                SendTaskSuccessRequest request = taskSuccessRequest(newImage);
+                inFlight.acquireUninterruptibly();
+                results.add(tokens.complete(newImage.get("property_id").getS(), request.taskToken(),
+                                () -> taskSuccessful(request))
+                        .whenComplete((outcome, error) -> inFlight.release()));
             } catch (Exception e) {
-                /*
-                 * Since we are working with streams, we can return the failed item immediately.
-                 * Lambda will immediately begin to retry processing from this failed item
-                 * onwards.
-                 */
-                batchItemFailures.add(new StreamsEventResponse.BatchItemFailure(curRecordSequenceNumber));
-                return new StreamsEventResponse(batchItemFailures);
+                logger.error("Cannot process record {}: {}", curRecordSequenceNumber, e.getMessage());
+                results.add(CompletableFuture.failedFuture(e));
+            }
+            sequenceNumbers.add(curRecordSequenceNumber);
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).exceptionally(ignored -> null).join();
+
+        // the records were sent in stream order, so the first failure is the earliest one
+        String earliestFailure = null;
+        int failed = 0;
+        int duplicates = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).isCompletedExceptionally()) {
+                failed++;
+                if (earliestFailure == null) {
+                    earliestFailure = sequenceNumbers.get(i);
+                }
+            } else if (results.get(i).join() != Outcome.COMPLETED) {
+                duplicates++;
             }
         }
+        int completed = results.size() - failed - duplicates;
+
+        logger.info("Stream batch of {} records: {} skipped, {} completed, {} duplicate, {} failed",
+                input.getRecords().size(), skipped, completed, duplicates, failed);
+        MetricsLogger metrics = new MetricsLogger();
+        if (NAMESPACE != null) {
+            metrics.setNamespace(NAMESPACE);
+        }
+        metrics.putMetric("ApprovalSyncRecordsSkipped", skipped, Unit.COUNT);
+        metrics.putMetric("ApprovalSyncRecordsCompleted", completed, Unit.COUNT);
+        metrics.putMetric("ApprovalSyncRecordsDuplicate", duplicates, Unit.COUNT);
+        metrics.putMetric("ApprovalSyncRecordsFailed", failed, Unit.COUNT);
+        metrics.flush();
+
+        if (earliestFailure == null) {
+            return new StreamsEventResponse();
+        }
+        List<StreamsEventResponse.BatchItemFailure> batchItemFailures = new ArrayList<>();
+        batchItemFailures.add(new StreamsEventResponse.BatchItemFailure(earliestFailure));
+        return new StreamsEventResponse(batchItemFailures);
+    }
+
+    /**
+     * A record resumes a workflow when its new image is an APPROVED contract
+     * with the task token of a waiting workflow. The stream filter criteria in
+     * the template select the same records.
+     */
+    private boolean resumesWorkflow(Map<String, AttributeValue> newImage) {
+        if (newImage == null) {
+            logger.debug("New image is null, record skipped");
+            return false;
+        }
+        if (newImage.get("sfn_wait_approved_task_token") == null) {
+            logger.debug("No task token in the new image, record skipped");
+            return false;
+        }
+        AttributeValue status = newImage.get("contract_status");
+        if (status == null || !"APPROVED".equalsIgnoreCase(status.getS())) {
+            logger.debug("Contract status for property is not APPROVED : " + newImage.get("property_id"));
+            return false;
+        }
+        return true;
+    }
 
-        return new StreamsEventResponse();
+    /**
+     * A task that is no longer waiting, because it was resumed by an earlier
+     * attempt of this batch or has timed out, cannot be resumed by retrying, so
+     * it does not fail the record.
+     */
+    private CompletableFuture<Void> taskSuccessful(SendTaskSuccessRequest request) {
+        return snfClient.sendTaskSuccess(request)
+                .handle((response, error) -> {
+                    if (error == null) {
+                        return null;
+                    }
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof TaskTimedOutException) {
+                        logger.warn("Task is no longer waiting: {}", cause.getMessage());
+                        return null;
+                    }
+                    throw new CompletionException(cause);
+                });
     }
 
-    private void taskSuccessful(String s, Map<String, AttributeValue> item) throws JsonProcessingException {
+    private SendTaskSuccessRequest taskSuccessRequest(Map<String, AttributeValue> item) throws JsonProcessingException {
         // create the json structure and send the token
-        ObjectMapper mapper = new ObjectMapper();
         ContractStatus contractStatus = new ContractStatus();
         contractStatus.setContract_id(item.get("contract_id").getS());
         contractStatus.setContract_status(item.get("contract_status").getS());
         contractStatus.setProperty_id(item.get("property_id").getS());
         contractStatus.setSfn_wait_approved_task_token(item.get("sfn_wait_approved_task_token").getS());
-        String taskResult = mapper.writeValueAsString(contractStatus);
+        String taskResult = Json.write(contractStatus);
 
-        SendTaskSuccessRequest request = SendTaskSuccessRequest.builder()
+        return SendTaskSuccessRequest.builder()
                 .taskToken(contractStatus.getSfn_wait_approved_task_token())
                 .output(taskResult)
                 .build();
-        snfClient.sendTaskSuccess(request).join();
+    }
 
+    private void prime() {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("contract_id", new AttributeValue().withS("priming"));
+        item.put("contract_status", new AttributeValue().withS("APPROVED"));
+        item.put("property_id", new AttributeValue().withS("priming/priming/priming/0"));
+        item.put("sfn_wait_approved_task_token", new AttributeValue().withS("priming"));
+        try {
+            taskSuccessRequest(item);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
\ No newline at end of file
@@ -1,21 +1,24 @@
 package properties;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import properties.helper.Clients;
+import properties.helper.Json;
+import properties.helper.Priming;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
@@ -29,15 +32,18 @@ import software.amazon.lambda.powertools.tracing.Tracing;
  */
 public class WaitForContractApprovalFunction {
 
+    private static final String PRIMING_PROPERTY_ID = "priming/priming/priming/0";
+    private static final String PRIMING_INPUT = "{\"TaskToken\": \"priming\", "
+            + "\"Input\": {\"property_id\": \"" + PRIMING_PROPERTY_ID + "\"}}";
+
     Logger logger = LogManager.getLogger();
 
     final String TABLE_NAME = System.getenv("CONTRACT_STATUS_TABLE");
 
-    DynamoDbAsyncClient dynamodbClient = DynamoDbAsyncClient.builder()
-            .httpClientBuilder(NettyNioAsyncHttpClient.builder()
-                    .maxConcurrency(100)
-                    .maxPendingConnectionAcquires(10_000))
-            .build();
+    DynamoDbAsyncClient dynamodbClient = Clients.dynamoDbAsync();
+
+    private final Priming priming = Priming.register(
+            WaitForContractApprovalFunction.class.getSimpleName(), this::prime, this::reconnect);
 
     @Tracing
     @Metrics(captureColdStart = true)
@@ -45,10 +51,8 @@ public class WaitForContractApprovalFunction {
     public void handleRequest(InputStream inputStream, OutputStream outputStream,
                               Context context) throws IOException, ContractStatusNotFoundException {
 
-        // deseralised to contract status
-        ObjectMapper objectMapper = new ObjectMapper();
-        String srtInput = new String(inputStream.readAllBytes());
-        JsonNode event = objectMapper.readTree(srtInput);
+        // deseralised to contract status, parsed straight from the stream
+        JsonNode event = Json.readTree(inputStream);
         String propertyId = event.get("Input").get("property_id").asText();
         String taskToken = event.get("TaskToken").asText();
 
@@ -67,7 +71,25 @@ public class WaitForContractApprovalFunction {
 
     }
 
+    private void prime() {
+        try {
+            JsonNode event = Json.readTree(new ByteArrayInputStream(PRIMING_INPUT.getBytes(StandardCharsets.UTF_8)));
+            getItemRequest(event.get("Input").get("property_id").asText());
+            updateTokenRequest(event.get("TaskToken").asText(), PRIMING_PROPERTY_ID);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void reconnect() {
+        dynamodbClient.getItem(getItemRequest(PRIMING_PROPERTY_ID)).join();
+    }
+
     private void updateTokenAndPauseExecution(String taskToken, String propertyId) {
+        dynamodbClient.updateItem(updateTokenRequest(taskToken, propertyId)).join();
+    }
+
+    private UpdateItemRequest updateTokenRequest(String taskToken, String propertyId) {
         Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
         AttributeValue keyvalue = AttributeValue.fromS(propertyId);
         key.put("property_id", keyvalue);
@@ -75,27 +97,30 @@ public class WaitForContractApprovalFunction {
         Map<String, AttributeValue> expressionAttributeValues = new HashMap<String, AttributeValue>();
         expressionAttributeValues.put(":g", AttributeValue.fromS(taskToken));
 
-        UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
+        return UpdateItemRequest.builder()
                 .key(key)
                 .tableName(TABLE_NAME)
                 .updateExpression(
                         "set sfn_wait_approved_task_token = :g")
                 .expressionAttributeValues(expressionAttributeValues)
                 .build();
-        dynamodbClient.updateItem(updateItemRequest).join();
     }
 
-    private Map<String, AttributeValue> getContractStatus(String propertyId)
-            throws ContractStatusNotFoundException {
+    private GetItemRequest getItemRequest(String propertyId) {
         HashMap<String, AttributeValue> keyToGet = new HashMap<String, AttributeValue>();
 
         keyToGet.put("property_id", AttributeValue.builder()
                 .s(propertyId).build());
 
-        GetItemRequest request = GetItemRequest.builder()
+        return GetItemRequest.builder()
                 .key(keyToGet)
                 .tableName(TABLE_NAME)
                 .build();
+    }
+
+    private Map<String, AttributeValue> getContractStatus(String propertyId)
+            throws ContractStatusNotFoundException {
+        GetItemRequest request = getItemRequest(propertyId);
         Map<String, AttributeValue> returnvalue = null;
         try {
             returnvalue = dynamodbClient.getItem(request).join().item();
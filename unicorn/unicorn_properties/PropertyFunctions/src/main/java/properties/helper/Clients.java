@@ -0,0 +1,112 @@
+package properties.helper;
+
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.retries.api.BackoffStrategy;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.sfn.SfnAsyncClient;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The AWS clients of this module, one instance of each per container.
+ *
+ * The clients share one async HTTP client and one event loop, so the
+ * connection pool is configured in a single place:
+ * <ul>
+ *     <li>{@code ASYNC_HTTP_CLIENT}: {@code NETTY} (default)</li>
+ *     <li>{@code HTTP_MAX_CONNECTIONS}: connection pool size, default 50</li>
+ *     <li>{@code HTTP_MAX_PENDING_ACQUIRES}: requests waiting for a connection, default 10000</li>
+ *     <li>{@code HTTP_TCP_KEEP_ALIVE}: TCP keep-alive on pooled connections, default true</li>
+ *     <li>{@code HTTP_CONNECTION_TTL_SECONDS}: how long a pooled connection is reused, default 60</li>
+ *     <li>{@code HTTP_CONNECTION_TIMEOUT_MS}: connect timeout, default 2000</li>
+ *     <li>{@code AWS_RETRY_MODE}: {@code STANDARD} (default), {@code ADAPTIVE} or {@code LEGACY}</li>
+ *     <li>{@code AWS_MAX_ATTEMPTS}: attempts per call including the first one, default 3</li>
+ *     <li>{@code AWS_RETRY_BASE_DELAY_MS} / {@code AWS_RETRY_MAX_BACKOFF_MS}: exponential backoff
+ *     with jitter, default 100 / 20000</li>
+ * </ul>
+ */
+public final class Clients {
+
+    private static final String ASYNC_HTTP_CLIENT = env("ASYNC_HTTP_CLIENT", "NETTY").toUpperCase();
+    private static final int MAX_CONNECTIONS = Integer.parseInt(env("HTTP_MAX_CONNECTIONS", "50"));
+    private static final int MAX_PENDING_ACQUIRES = Integer.parseInt(env("HTTP_MAX_PENDING_ACQUIRES", "10000"));
+    private static final boolean TCP_KEEP_ALIVE = Boolean.parseBoolean(env("HTTP_TCP_KEEP_ALIVE", "true"));
+    private static final Duration CONNECTION_TTL = Duration.ofSeconds(
+            Long.parseLong(env("HTTP_CONNECTION_TTL_SECONDS", "60")));
+    private static final Duration CONNECTION_TIMEOUT = Duration.ofMillis(
+            Long.parseLong(env("HTTP_CONNECTION_TIMEOUT_MS", "2000")));
+    private static final RetryMode RETRY_MODE = RetryMode.valueOf(env("AWS_RETRY_MODE", "STANDARD").toUpperCase());
+    private static final int MAX_ATTEMPTS = Integer.parseInt(env("AWS_MAX_ATTEMPTS", "3"));
+    private static final Duration RETRY_BASE_DELAY = Duration.ofMillis(
+            Long.parseLong(env("AWS_RETRY_BASE_DELAY_MS", "100")));
+    private static final Duration RETRY_MAX_BACKOFF = Duration.ofMillis(
+            Long.parseLong(env("AWS_RETRY_MAX_BACKOFF_MS", "20000")));
+
+    private Clients() {
+    }
+
+    public static DynamoDbAsyncClient dynamoDbAsync() {
+        return DynamoDbAsync.CLIENT;
+    }
+
+    public static SfnAsyncClient sfnAsync() {
+        return SfnAsync.CLIENT;
+    }
+
+    public static SdkAsyncHttpClient asyncHttpClient() {
+        return AsyncHttp.CLIENT;
+    }
+
+    public static ClientOverrideConfiguration overrideConfiguration() {
+        return ClientOverrideConfiguration.builder()
+                .retryStrategy(AwsRetryStrategy.forRetryMode(RETRY_MODE).toBuilder()
+                        .maxAttempts(MAX_ATTEMPTS)
+                        .backoffStrategy(BackoffStrategy.exponentialDelay(RETRY_BASE_DELAY, RETRY_MAX_BACKOFF))
+                        .build())
+                .build();
+    }
+
+    private static SdkAsyncHttpClient buildAsyncHttpClient() {
+        switch (ASYNC_HTTP_CLIENT) {
+            case "NETTY":
+                return NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(MAX_CONNECTIONS)
+                        .maxPendingConnectionAcquires(MAX_PENDING_ACQUIRES)
+                        .tcpKeepAlive(TCP_KEEP_ALIVE)
+                        .connectionTimeToLive(CONNECTION_TTL)
+                        .connectionTimeout(CONNECTION_TIMEOUT)
+                        .build();
+            default:
+                throw new IllegalStateException("Unsupported ASYNC_HTTP_CLIENT: " + ASYNC_HTTP_CLIENT);
+        }
+    }
+
+    private static String env(String name, String defaultValue) {
+        return Optional.ofNullable(System.getenv(name)).orElse(defaultValue);
+    }
+
+    // holders, so a handler only builds the clients it uses
+
+    private static final class AsyncHttp {
+        static final SdkAsyncHttpClient CLIENT = buildAsyncHttpClient();
+    }
+
+    private static final class DynamoDbAsync {
+        static final DynamoDbAsyncClient CLIENT = DynamoDbAsyncClient.builder()
+                .httpClient(AsyncHttp.CLIENT)
+                .overrideConfiguration(overrideConfiguration())
+                .build();
+    }
+
+    private static final class SfnAsync {
+        static final SfnAsyncClient CLIENT = SfnAsyncClient.builder()
+                .httpClient(AsyncHttp.CLIENT)
+                .overrideConfiguration(overrideConfiguration())
+                .build();
+    }
+}
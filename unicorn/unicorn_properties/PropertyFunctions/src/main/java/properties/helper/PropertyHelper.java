@@ -4,7 +4,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 
-import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
@@ -14,11 +13,7 @@ public class PropertyHelper {
 
     String tableName;
 
-    DynamoDbAsyncClient dynamodbClient = DynamoDbAsyncClient.builder()
-            .httpClientBuilder(NettyNioAsyncHttpClient.builder()
-                    .maxConcurrency(100)
-                    .maxPendingConnectionAcquires(10_000))
-            .build();
+    DynamoDbAsyncClient dynamodbClient = Clients.dynamoDbAsync();
 
     public PropertyHelper(String tableName) {
         this.tableName = tableName;
@@ -0,0 +1,235 @@
+package properties.helper;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+
+/**
+ * Makes sure the task token of an approval workflow is completed once, whether
+ * the contract status event handler or the stream sync function gets there
+ * first, and however often the stream replays the record.
+ *
+ * The markers live in their own table, keyed on the token ({@code id}), with
+ * {@code expiration} (epoch seconds) as its TTL attribute; written to the
+ * contract status table they would show up in its stream as new records.
+ * Before a token is sent, it is claimed with a conditional put, for
+ * {@code TOKEN_CLAIM_SECONDS} (default 60). After a successful send the record
+ * is marked completed and kept for {@code TOKEN_COMPLETED_TTL_SECONDS} (default
+ * 14 days); after a failed one the claim is deleted, so a retry can send again.
+ * A claim held by another invocation is left to it: that invocation releases
+ * the claim and fails when its send fails, so its own retry sends the token.
+ * A claim left behind by a crashed invocation expires. Tokens completed or
+ * found completed are also remembered per container, the last
+ * {@code TOKEN_CACHE_SIZE} (default 1000), so replays are skipped without a
+ * DynamoDB call, and concurrent completions of the same token within a
+ * container share one attempt.
+ */
+public class TokenCompletionRegistry {
+
+    private static final Logger logger = LogManager.getLogger(TokenCompletionRegistry.class);
+
+    private static final Duration CLAIM = Duration.ofSeconds(Long.parseLong(
+            Optional.ofNullable(System.getenv("TOKEN_CLAIM_SECONDS")).orElse("60")));
+    private static final Duration COMPLETED_TTL = Duration.ofSeconds(Long.parseLong(
+            Optional.ofNullable(System.getenv("TOKEN_COMPLETED_TTL_SECONDS")).orElse("1209600")));
+    private static final int CACHE_SIZE = Integer.parseInt(
+            Optional.ofNullable(System.getenv("TOKEN_CACHE_SIZE")).orElse("1000"));
+
+    private static final String STATUS_IN_PROGRESS = "IN_PROGRESS";
+    private static final String STATUS_COMPLETED = "COMPLETED";
+
+    /**
+     * What happened to a token handed to {@link #complete}.
+     */
+    public enum Outcome {
+        /** sent by this call */
+        COMPLETED,
+        /** already completed, nothing was sent */
+        SKIPPED,
+        /** being sent by another invocation, which retries itself if it fails */
+        CLAIMED_ELSEWHERE
+    }
+
+    private final DynamoDbAsyncClient dynamodbClient;
+    private final String tableName;
+    private final Clock clock;
+
+    private final Set<String> recent = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            }));
+    private final Map<String, CompletableFuture<Outcome>> inFlight = new ConcurrentHashMap<>();
+
+    public TokenCompletionRegistry(DynamoDbAsyncClient dynamodbClient, String tableName) {
+        this(dynamodbClient, tableName, Clock.systemUTC());
+    }
+
+    public TokenCompletionRegistry(DynamoDbAsyncClient dynamodbClient, String tableName, Clock clock) {
+        this.dynamodbClient = dynamodbClient;
+        this.tableName = tableName;
+        this.clock = clock;
+    }
+
+    /**
+     * Sends the token with {@code send}, unless it has been completed already
+     * or another invocation is sending it. Fails when the send fails, so the
+     * caller retries later.
+     */
+    public CompletableFuture<Outcome> complete(String propertyId, String token,
+                                               Supplier<CompletableFuture<?>> send) {
+        if (recent.contains(token)) {
+            logger.debug("Task token of property {} was completed recently", propertyId);
+            return CompletableFuture.completedFuture(Outcome.SKIPPED);
+        }
+        CompletableFuture<Outcome> created = new CompletableFuture<>();
+        CompletableFuture<Outcome> existing = inFlight.putIfAbsent(token, created);
+        if (existing != null) {
+            return existing;
+        }
+        claim(propertyId, token)
+                .thenCompose(held -> held == null
+                        ? sendAndMark(propertyId, token, send)
+                        : CompletableFuture.completedFuture(held))
+                .whenComplete((outcome, error) -> {
+                    if (error == null && outcome != Outcome.CLAIMED_ELSEWHERE) {
+                        recent.add(token);
+                    }
+                    inFlight.remove(token);
+                    if (error != null) {
+                        created.completeExceptionally(error);
+                    } else {
+                        created.complete(outcome);
+                    }
+                });
+        return created;
+    }
+
+    /**
+     * @return null when the claim is taken, otherwise why the token is not sent
+     */
+    private CompletableFuture<Outcome> claim(String propertyId, String token) {
+        Instant now = clock.instant();
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("id", AttributeValue.fromS(token));
+        item.put("property_id", AttributeValue.fromS(propertyId));
+        item.put("status", AttributeValue.fromS(STATUS_IN_PROGRESS));
+        item.put("expiration", epochSeconds(now.plus(CLAIM)));
+        return dynamodbClient.putItem(request -> request
+                        .tableName(tableName)
+                        .item(item)
+                        .conditionExpression("attribute_not_exists(id)"
+                                + " OR (#status = :in_progress AND expiration < :now)")
+                        .expressionAttributeNames(Map.of("#status", "status"))
+                        .expressionAttributeValues(Map.of(
+                                ":in_progress", AttributeValue.fromS(STATUS_IN_PROGRESS),
+                                ":now", epochSeconds(now)))
+                        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD))
+                .handle((response, error) -> {
+                    if (error == null) {
+                        return null;
+                    }
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (!(cause instanceof ConditionalCheckFailedException)) {
+                        throw new CompletionException(cause);
+                    }
+                    Map<String, AttributeValue> old = ((ConditionalCheckFailedException) cause).item();
+                    if (old != null && old.containsKey("status")
+                            && STATUS_COMPLETED.equals(old.get("status").s())) {
+                        logger.info("Task token of property {} is already completed", propertyId);
+                        return Outcome.SKIPPED;
+                    }
+                    logger.info("Task token of property {} is being completed by another invocation", propertyId);
+                    return Outcome.CLAIMED_ELSEWHERE;
+                });
+    }
+
+    private CompletableFuture<Outcome> sendAndMark(String propertyId, String token,
+                                                   Supplier<CompletableFuture<?>> send) {
+        CompletableFuture<?> sent;
+        try {
+            sent = send.get();
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        return sent
+                .handle((response, error) -> error)
+                .thenCompose(error -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        return release(propertyId, token)
+                                .<Outcome>handle((released, releaseError) -> {
+                                    throw new CompletionException(cause);
+                                });
+                    }
+                    return markCompleted(propertyId, token).thenApply(ignored -> Outcome.COMPLETED);
+                });
+    }
+
+    /**
+     * The token has been sent, so a failure to record it is only logged; the
+     * claim then expires and a replay sends it again, which the task ignores.
+     */
+    private CompletableFuture<Void> markCompleted(String propertyId, String token) {
+        return dynamodbClient.updateItem(request -> request
+                        .tableName(tableName)
+                        .key(key(token))
+                        .updateExpression("SET #status = :completed, expiration = :expiration")
+                        .expressionAttributeNames(Map.of("#status", "status"))
+                        .expressionAttributeValues(Map.of(
+                                ":completed", AttributeValue.fromS(STATUS_COMPLETED),
+                                ":expiration", epochSeconds(clock.instant().plus(COMPLETED_TTL)))))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        logger.warn("Cannot mark the task token of property {} completed: {}", propertyId,
+                                error.getMessage());
+                    }
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> release(String propertyId, String token) {
+        return dynamodbClient.deleteItem(request -> request
+                        .tableName(tableName)
+                        .key(key(token))
+                        .conditionExpression("#status = :in_progress")
+                        .expressionAttributeNames(Map.of("#status", "status"))
+                        .expressionAttributeValues(Map.of(
+                                ":in_progress", AttributeValue.fromS(STATUS_IN_PROGRESS))))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        logger.warn("Cannot release the task token claim of property {}: {}", propertyId,
+                                error.getMessage());
+                    }
+                    return null;
+                });
+    }
+
+    private static Map<String, AttributeValue> key(String token) {
+        return Map.of("id", AttributeValue.fromS(token));
+    }
+
+    private static AttributeValue epochSeconds(Instant instant) {
+        return AttributeValue.fromN(String.valueOf(instant.getEpochSecond()));
+    }
+}
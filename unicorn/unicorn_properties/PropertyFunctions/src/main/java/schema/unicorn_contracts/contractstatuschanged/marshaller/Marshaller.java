@@ -3,6 +3,8 @@ package schema.unicorn_contracts.contractstatuschanged.marshaller;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import properties.helper.Json;
 import schema.unicorn_contracts.contractstatuschanged.AWSEvent;
 import schema.unicorn_contracts.contractstatuschanged.ContractStatusChanged;
 
@@ -13,6 +15,8 @@ import java.io.OutputStream;
 public class Marshaller {
 
     private static final ObjectMapper MAPPER = createObjectMapper();
+    private static final ObjectReader EVENT_READER =
+            MAPPER.readerFor(new TypeReference<AWSEvent<ContractStatusChanged>>() {});
 
     public static <T> void marshal(OutputStream output, T value) throws IOException {
         MAPPER.writeValue(output, value);
@@ -23,13 +27,11 @@ public class Marshaller {
     }
 
     public static AWSEvent<ContractStatusChanged> unmarshalEvent(InputStream input) throws IOException {
-        TypeReference<AWSEvent<ContractStatusChanged>> typeRef = new TypeReference<AWSEvent<ContractStatusChanged>>() {};
-        return MAPPER.readValue(input, typeRef);
+        return EVENT_READER.readValue(input);
     }
 
     private static ObjectMapper createObjectMapper() {
-        return new ObjectMapper()
-                .findAndRegisterModules()
+        return Json.newObjectMapper()
                 .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
     }
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+package properties.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import properties.helper.TokenCompletionRegistry.Outcome;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+public class TokenCompletionRegistryTest {
+
+    private static final String TABLE = "tokens";
+    private static final String PROPERTY_ID = "usa/anytown/main-street/111";
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final TokenTable table = new TokenTable();
+    private final Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+    private final AtomicInteger sent = new AtomicInteger();
+
+    @Test
+    public void tokenIsSentOnceAndMarkedCompleted() {
+        TokenCompletionRegistry registry = new TokenCompletionRegistry(table, TABLE, clock);
+
+        assertEquals(Outcome.COMPLETED, registry.complete(PROPERTY_ID, "token-1", this::send).join());
+
+        assertEquals(1, sent.get());
+        Map<String, AttributeValue> item = table.items.get("token-1");
+        assertEquals("COMPLETED", item.get("status").s());
+        assertEquals(PROPERTY_ID, item.get("property_id").s());
+        assertTrue(Long.parseLong(item.get("expiration").n()) > NOW.plusSeconds(86400).getEpochSecond());
+    }
+
+    @Test
+    public void completedTokenIsSkippedByAnotherContainer() {
+        new TokenCompletionRegistry(table, TABLE, clock).complete(PROPERTY_ID, "token-1", this::send).join();
+
+        Outcome outcome = new TokenCompletionRegistry(table, TABLE, clock)
+                .complete(PROPERTY_ID, "token-1", this::send).join();
+
+        assertEquals(Outcome.SKIPPED, outcome);
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void recentlyCompletedTokenIsSkippedWithoutDynamoDb() {
+        TokenCompletionRegistry registry = new TokenCompletionRegistry(table, TABLE, clock);
+        registry.complete(PROPERTY_ID, "token-1", this::send).join();
+        int requests = table.requests;
+
+        assertEquals(Outcome.SKIPPED, registry.complete(PROPERTY_ID, "token-1", this::send).join());
+        assertEquals(requests, table.requests);
+    }
+
+    @Test
+    public void tokenClaimedByAnotherInvocationIsLeftToIt() {
+        table.items.put("token-1", claim(NOW.plusSeconds(30)));
+
+        Outcome outcome = new TokenCompletionRegistry(table, TABLE, clock)
+                .complete(PROPERTY_ID, "token-1", this::send).join();
+
+        assertEquals(Outcome.CLAIMED_ELSEWHERE, outcome);
+        assertEquals(0, sent.get());
+    }
+
+    @Test
+    public void handlerAndStreamRaceForTheSameToken() {
+        TokenCompletionRegistry handler = new TokenCompletionRegistry(table, TABLE, clock);
+        TokenCompletionRegistry stream = new TokenCompletionRegistry(table, TABLE, clock);
+        CompletableFuture<Void> response = new CompletableFuture<>();
+
+        CompletableFuture<Outcome> sending = handler.complete(PROPERTY_ID, "token-1", () -> {
+            sent.incrementAndGet();
+            return response;
+        });
+        Outcome raced = stream.complete(PROPERTY_ID, "token-1", this::send).join();
+        response.complete(null);
+
+        assertEquals(Outcome.CLAIMED_ELSEWHERE, raced);
+        assertEquals(Outcome.COMPLETED, sending.join());
+        assertEquals(1, sent.get());
+        // the stream replay finds the token completed rather than skipping it from memory
+        assertEquals(Outcome.SKIPPED, stream.complete(PROPERTY_ID, "token-1", this::send).join());
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void holderOfTheClaimRetriesAfterAFailedSend() {
+        TokenCompletionRegistry handler = new TokenCompletionRegistry(table, TABLE, clock);
+        TokenCompletionRegistry stream = new TokenCompletionRegistry(table, TABLE, clock);
+        CompletableFuture<Void> response = new CompletableFuture<>();
+
+        CompletableFuture<Outcome> sending = handler.complete(PROPERTY_ID, "token-1", () -> response);
+        assertEquals(Outcome.CLAIMED_ELSEWHERE, stream.complete(PROPERTY_ID, "token-1", this::send).join());
+        response.completeExceptionally(new IllegalStateException("throttled"));
+
+        assertTrue(sending.isCompletedExceptionally());
+        assertEquals(Outcome.COMPLETED, handler.complete(PROPERTY_ID, "token-1", this::send).join());
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void expiredClaimIsTakenOver() {
+        table.items.put("token-1", claim(NOW.minusSeconds(1)));
+
+        Outcome outcome = new TokenCompletionRegistry(table, TABLE, clock)
+                .complete(PROPERTY_ID, "token-1", this::send).join();
+
+        assertEquals(Outcome.COMPLETED, outcome);
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void failedSendReleasesTheClaimForARetry() {
+        TokenCompletionRegistry registry = new TokenCompletionRegistry(table, TABLE, clock);
+
+        try {
+            registry.complete(PROPERTY_ID, "token-1",
+                    () -> CompletableFuture.failedFuture(new IllegalStateException("throttled"))).join();
+            fail("expected the send to fail");
+        } catch (CompletionException e) {
+            assertEquals("throttled", e.getCause().getMessage());
+        }
+        assertFalse(table.items.containsKey("token-1"));
+
+        assertEquals(Outcome.COMPLETED, registry.complete(PROPERTY_ID, "token-1", this::send).join());
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void concurrentCompletionsShareOneAttempt() {
+        TokenCompletionRegistry registry = new TokenCompletionRegistry(table, TABLE, clock);
+        CompletableFuture<Void> response = new CompletableFuture<>();
+
+        CompletableFuture<Outcome> first = registry.complete(PROPERTY_ID, "token-1", () -> {
+            sent.incrementAndGet();
+            return response;
+        });
+        CompletableFuture<Outcome> second = registry.complete(PROPERTY_ID, "token-1", this::send);
+        response.complete(null);
+
+        assertSame(first, second);
+        assertEquals(Outcome.COMPLETED, second.join());
+        assertEquals(1, sent.get());
+    }
+
+    @Test
+    public void markersOnlyGoToTheirOwnTable() {
+        TokenCompletionRegistry registry = new TokenCompletionRegistry(table, TABLE, clock);
+        registry.complete(PROPERTY_ID, "token-1", this::send).join();
+        registry.complete(PROPERTY_ID, "token-2",
+                () -> CompletableFuture.failedFuture(new IllegalStateException("failed"))).exceptionally(e -> null).join();
+
+        assertEquals(List.of(TABLE), table.tables);
+    }
+
+    private CompletableFuture<?> send() {
+        sent.incrementAndGet();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static Map<String, AttributeValue> claim(Instant expiration) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("id", AttributeValue.fromS("token-1"));
+        item.put("status", AttributeValue.fromS("IN_PROGRESS"));
+        item.put("expiration", AttributeValue.fromN(String.valueOf(expiration.getEpochSecond())));
+        return item;
+    }
+
+    /**
+     * The token table, evaluating the conditions the registry writes with.
+     */
+    private static class TokenTable implements DynamoDbAsyncClient {
+
+        final Map<String, Map<String, AttributeValue>> items = new HashMap<>();
+        final List<String> tables = new ArrayList<>();
+        int requests;
+
+        @Override
+        public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+            record(request.tableName());
+            String id = request.item().get("id").s();
+            Map<String, AttributeValue> old = items.get(id);
+            long now = Long.parseLong(request.expressionAttributeValues().get(":now").n());
+            if (old != null && !(old.get("status").s().equals("IN_PROGRESS")
+                    && Long.parseLong(old.get("expiration").n()) < now)) {
+                return CompletableFuture.failedFuture(
+                        ConditionalCheckFailedException.builder().item(old).build());
+            }
+            items.put(id, new HashMap<>(request.item()));
+            return CompletableFuture.completedFuture(PutItemResponse.builder().build());
+        }
+
+        @Override
+        public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest request) {
+            record(request.tableName());
+            Map<String, AttributeValue> item = items.computeIfAbsent(request.key().get("id").s(),
+                    id -> new HashMap<>(request.key()));
+            item.put("status", request.expressionAttributeValues().get(":completed"));
+            item.put("expiration", request.expressionAttributeValues().get(":expiration"));
+            return CompletableFuture.completedFuture(UpdateItemResponse.builder().build());
+        }
+
+        @Override
+        public CompletableFuture<DeleteItemResponse> deleteItem(DeleteItemRequest request) {
+            record(request.tableName());
+            String id = request.key().get("id").s();
+            Map<String, AttributeValue> old = items.get(id);
+            if (old == null || !old.get("status").s().equals("IN_PROGRESS")) {
+                return CompletableFuture.failedFuture(ConditionalCheckFailedException.builder().build());
+            }
+            items.remove(id);
+            return CompletableFuture.completedFuture(DeleteItemResponse.builder().build());
+        }
+
+        private void record(String tableName) {
+            requests++;
+            if (!tables.contains(tableName)) {
+                tables.add(tableName);
+            }
+        }
+
+        @Override
+        public String serviceName() {
+            return "dynamodb";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
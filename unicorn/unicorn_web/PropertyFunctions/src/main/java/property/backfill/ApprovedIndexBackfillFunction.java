@@ -0,0 +1,109 @@
+package property.backfill;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import property.dao.Property;
+import property.helper.Clients;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Writes the approved index keys on properties that were approved before the
+ * index existed.
+ *
+ * The table is scanned from the key passed in ({@code PK}/{@code SK}, or the
+ * start), and the function stops before its timeout. It returns
+ * {@code complete=false} with a {@code nextKey}; invoke it again with that key
+ * until it reports {@code complete=true}. Running it twice is harmless, since
+ * items that already have the keys are skipped.
+ */
+public class ApprovedIndexBackfillFunction implements RequestHandler<Map<String, String>, Map<String, Object>> {
+
+    private static final Logger logger = LogManager.getLogger(ApprovedIndexBackfillFunction.class);
+
+    private static final int PAGE_SIZE = 100;
+    private static final long MIN_REMAINING_MILLIS = 30_000;
+    private static final AttributeValue APPROVED = AttributeValue.fromS(Property.APPROVED);
+
+    final String TABLE_NAME = System.getenv("DYNAMODB_TABLE");
+
+    DynamoDbAsyncClient dynamodbClient = Clients.dynamoDb();
+
+    @Override
+    public Map<String, Object> handleRequest(Map<String, String> input, Context context) {
+        Map<String, AttributeValue> startKey = input != null && input.get("PK") != null
+                ? Map.of("PK", AttributeValue.fromS(input.get("PK")), "SK", AttributeValue.fromS(input.get("SK")))
+                : null;
+        long scanned = 0;
+        long updated = 0;
+
+        do {
+            ScanResponse page = dynamodbClient.scan(ScanRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .projectionExpression("PK, SK")
+                    .filterExpression("#status = :approved AND attribute_not_exists(#approvedPk)")
+                    .expressionAttributeNames(Map.of("#status", "status", "#approvedPk", "ApprovedPK"))
+                    .expressionAttributeValues(Map.of(":approved", APPROVED))
+                    .exclusiveStartKey(startKey)
+                    .limit(PAGE_SIZE)
+                    .build()).join();
+            scanned += page.scannedCount();
+            updated += backfill(page.items());
+            startKey = page.hasLastEvaluatedKey() && !page.lastEvaluatedKey().isEmpty()
+                    ? page.lastEvaluatedKey()
+                    : null;
+        } while (startKey != null && context.getRemainingTimeInMillis() > MIN_REMAINING_MILLIS);
+
+        logger.info("Approved index backfill scanned {} items and updated {}, complete: {}",
+                scanned, updated, startKey == null);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("scanned", scanned);
+        result.put("updated", updated);
+        result.put("complete", startKey == null);
+        if (startKey != null) {
+            result.put("nextKey", Map.of("PK", startKey.get("PK").s(), "SK", startKey.get("SK").s()));
+        }
+        return result;
+    }
+
+    private long backfill(List<Map<String, AttributeValue>> keys) {
+        List<CompletableFuture<Boolean>> updates = new ArrayList<>(keys.size());
+        for (Map<String, AttributeValue> key : keys) {
+            updates.add(dynamodbClient.updateItem(UpdateItemRequest.builder()
+                            .tableName(TABLE_NAME)
+                            .key(key)
+                            .updateExpression("SET #approvedPk = PK, #approvedSk = SK")
+                            // the status may have changed since the scan
+                            .conditionExpression("#status = :approved")
+                            .expressionAttributeNames(Map.of("#status", "status",
+                                    "#approvedPk", "ApprovedPK", "#approvedSk", "ApprovedSK"))
+                            .expressionAttributeValues(Map.of(":approved", APPROVED))
+                            .build())
+                    .thenApply(response -> true)
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                        if (cause instanceof ConditionalCheckFailedException) {
+                            return false;
+                        }
+                        throw new CompletionException(cause);
+                    }));
+        }
+        return updates.stream().filter(CompletableFuture::join).count();
+    }
+}
@@ -0,0 +1,59 @@
+package property.dao;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Version stamp of a property partition ({@code property#country#city}),
+ * increased whenever the status of one of its properties changes. Search
+ * results cached with an older stamp are stale.
+ *
+ * The stamp is a separate item of the web table; its key does not start with
+ * {@code property#}, so property queries never read it.
+ */
+public final class PartitionVersions {
+
+    private static final String KEY_PREFIX = "version#";
+    private static final String SORT_KEY = "VERSION";
+    private static final String VERSION = "version";
+
+    private PartitionVersions() {
+    }
+
+    /**
+     * @return the current stamp of the partition, 0 if it never changed
+     */
+    public static CompletableFuture<Long> read(DynamoDbAsyncClient client, String tableName, String partitionKey) {
+        return client.getItem(GetItemRequest.builder()
+                        .tableName(tableName)
+                        .key(key(partitionKey))
+                        .projectionExpression("#version")
+                        .expressionAttributeNames(Map.of("#version", VERSION))
+                        .build())
+                .thenApply(response -> response.hasItem() && response.item().containsKey(VERSION)
+                        ? Long.parseLong(response.item().get(VERSION).n())
+                        : 0L);
+    }
+
+    public static CompletableFuture<Void> increment(DynamoDbAsyncClient client, String tableName,
+                                                    String partitionKey) {
+        return client.updateItem(UpdateItemRequest.builder()
+                        .tableName(tableName)
+                        .key(key(partitionKey))
+                        .updateExpression("ADD #version :one")
+                        .expressionAttributeNames(Map.of("#version", VERSION))
+                        .expressionAttributeValues(Map.of(":one", AttributeValue.fromN("1")))
+                        .build())
+                .thenApply(response -> null);
+    }
+
+    private static Map<String, AttributeValue> key(String partitionKey) {
+        return Map.of("PK", AttributeValue.fromS(KEY_PREFIX + partitionKey),
+                "SK", AttributeValue.fromS(SORT_KEY));
+    }
+}
@@ -7,11 +7,20 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
 
 @DynamoDbBean
 public class Property {
 
+    /**
+     * Sparse index of the listings that can be shown. Only APPROVED properties
+     * carry its key attributes, so a query reads nothing else.
+     */
+    public static final String APPROVED_INDEX = "ApprovedListingsIndex";
+    public static final String APPROVED = "APPROVED";
+
     String country;
     String city;
     String street;
@@ -27,11 +36,25 @@ public class Property {
     @JsonIgnore
     String sk;
     String id;
+    // built from the address on first use, cleared when the address changes
+    private PropertyId key;
+
+    /**
+     * @return the id of the property, from which its keys are derived
+     */
+    public PropertyId key() {
+        PropertyId result = key;
+        if (result == null) {
+            result = PropertyId.of(country, city, street, propertyNumber);
+            key = result;
+        }
+        return result;
+    }
 
     @DynamoDbPartitionKey
     @DynamoDbAttribute("PK")
     public String getPk() {
-        return ("PROPERTY#" + getCountry() + "#" + getCity()).replace(' ', '-').toLowerCase();
+        return key().pk();
     }
 
     public void setPk(String pk) {
@@ -41,17 +64,44 @@ public class Property {
     @DynamoDbSortKey
     @DynamoDbAttribute("SK")
     public String getSk() {
-        return (getStreet() + "#" + getPropertyNumber()).replace(' ', '-').toLowerCase();
+        return key().sk();
     }
 
     public void setSk(String sk) {
         this.sk = sk;
     }
 
+    @JsonIgnore
+    @DynamoDbSecondaryPartitionKey(indexNames = APPROVED_INDEX)
+    @DynamoDbAttribute("ApprovedPK")
+    public String getApprovedPk() {
+        return APPROVED.equals(getStatus()) ? getPk() : null;
+    }
+
+    public void setApprovedPk(String approvedPk) {
+        // derived from the status and the table key
+    }
+
+    @JsonIgnore
+    @DynamoDbSecondarySortKey(indexNames = APPROVED_INDEX)
+    @DynamoDbAttribute("ApprovedSK")
+    public String getApprovedSk() {
+        return APPROVED.equals(getStatus()) ? getSk() : null;
+    }
+
+    public void setApprovedSk(String approvedSk) {
+        // derived from the status and the table key
+    }
+
+    /**
+     * @return {@code country/city/street/number}, the form the contracts and
+     * properties services key their items by; it is the property_id and the
+     * resource of PublicationApprovalRequested events
+     */
     @JsonIgnore
     @software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbIgnore
     public String getId() {
-        return (getPk() + '/' + getSk()).replace('#', '/');
+        return key().id();
     }
 
     public void setId(String id) {
@@ -64,6 +114,7 @@ public class Property {
 
     public void setCountry(String country) {
         this.country = country;
+        this.key = null;
     }
 
     public String getCity() {
@@ -72,6 +123,7 @@ public class Property {
 
     public void setCity(String city) {
         this.city = city;
+        this.key = null;
     }
 
     public String getStreet() {
@@ -80,6 +132,7 @@ public class Property {
 
     public void setStreet(String street) {
         this.street = street;
+        this.key = null;
     }
 
     @DynamoDbAttribute(value = "number")
@@ -89,6 +142,7 @@ public class Property {
 
     public void setPropertyNumber(String propertyNumber) {
         this.propertyNumber = propertyNumber;
+        this.key = null;
     }
 
     public String getDescription() {
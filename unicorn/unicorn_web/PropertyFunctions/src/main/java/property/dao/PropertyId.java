@@ -0,0 +1,211 @@
+package property.dao;
+
+/**
+ * The id of a property, {@code country/city/street/number}, and the table keys
+ * derived from it: {@code PK = property#country#city} and
+ * {@code SK = street#number}.
+ *
+ * The id is kept in its canonical form, in lower case and with dashes for
+ * spaces, together with the positions of its three separators. The keys are
+ * built from it on first use and then cached; like {@link String#hashCode()},
+ * a race only builds them twice.
+ */
+public final class PropertyId {
+
+    private static final String PK_PREFIX = "property#";
+
+    private final String id;
+    private final int citySeparator;
+    private final int streetSeparator;
+    private final int numberSeparator;
+
+    private String pk;
+    private String sk;
+
+    private PropertyId(String id, int citySeparator, int streetSeparator, int numberSeparator) {
+        this.id = id;
+        this.citySeparator = citySeparator;
+        this.streetSeparator = streetSeparator;
+        this.numberSeparator = numberSeparator;
+    }
+
+    /**
+     * Validates an id from an API request in a single pass, without a regular
+     * expression or splitting it. The grammar is the one the approval API has
+     * always enforced, {@code [a-z-]+/[a-z-]+/[a-z][a-z0-9-]*}{@code /[0-9-]+}.
+     *
+     * @return the id, null when it does not match the grammar
+     */
+    public static PropertyId parse(String id) {
+        if (id == null) {
+            return null;
+        }
+        int citySeparator = -1;
+        int streetSeparator = -1;
+        int segment = 0;
+        int start = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c == '/') {
+                if (i == start || segment == 3) {
+                    return null;
+                }
+                if (segment == 0) {
+                    citySeparator = i;
+                } else if (segment == 1) {
+                    streetSeparator = i;
+                }
+                segment++;
+                start = i + 1;
+                continue;
+            }
+            boolean valid;
+            switch (segment) {
+                case 0:
+                case 1:
+                    valid = isLetter(c) || c == '-';
+                    break;
+                case 2:
+                    valid = isLetter(c) || (i > start && (isDigit(c) || c == '-'));
+                    break;
+                default:
+                    valid = isDigit(c) || c == '-';
+            }
+            if (!valid) {
+                return null;
+            }
+        }
+        if (segment != 3 || start == id.length()) {
+            return null;
+        }
+        return new PropertyId(id, citySeparator, streetSeparator, start - 1);
+    }
+
+    /**
+     * Reads an id from an event of another service, which is not held to the
+     * API grammar: any four non-empty segments are accepted and canonicalized.
+     *
+     * @throws IllegalArgumentException when the id does not have four segments
+     */
+    public static PropertyId normalize(String id) {
+        String canonical = canonical(id);
+        int citySeparator = -1;
+        int streetSeparator = -1;
+        int segment = 0;
+        int start = 0;
+        for (int i = 0; i < canonical.length(); i++) {
+            if (canonical.charAt(i) == '/') {
+                if (i == start || segment == 3) {
+                    throw new IllegalArgumentException("Invalid property id: " + id);
+                }
+                if (segment == 0) {
+                    citySeparator = i;
+                } else if (segment == 1) {
+                    streetSeparator = i;
+                }
+                segment++;
+                start = i + 1;
+            }
+        }
+        if (segment != 3 || start == canonical.length()) {
+            throw new IllegalArgumentException("Invalid property id: " + id);
+        }
+        return new PropertyId(canonical, citySeparator, streetSeparator, start - 1);
+    }
+
+    /**
+     * Builds the id of an address. A missing part is written as {@code null},
+     * as the keys of the table always have been.
+     */
+    public static PropertyId of(String country, String city, String street, String number) {
+        String canonicalCountry = canonical(country);
+        String canonicalCity = canonical(city);
+        String canonicalStreet = canonical(street);
+        String canonicalNumber = canonical(number);
+        int citySeparator = canonicalCountry.length();
+        int streetSeparator = citySeparator + 1 + canonicalCity.length();
+        int numberSeparator = streetSeparator + 1 + canonicalStreet.length();
+        String id = new StringBuilder(numberSeparator + 1 + canonicalNumber.length())
+                .append(canonicalCountry).append('/')
+                .append(canonicalCity).append('/')
+                .append(canonicalStreet).append('/')
+                .append(canonicalNumber)
+                .toString();
+        return new PropertyId(id, citySeparator, streetSeparator, numberSeparator);
+    }
+
+    public String pk() {
+        String result = pk;
+        if (result == null) {
+            result = new StringBuilder(PK_PREFIX.length() + streetSeparator)
+                    .append(PK_PREFIX)
+                    .append(id, 0, citySeparator)
+                    .append('#')
+                    .append(id, citySeparator + 1, streetSeparator)
+                    .toString();
+            pk = result;
+        }
+        return result;
+    }
+
+    public String sk() {
+        String result = sk;
+        if (result == null) {
+            result = new StringBuilder(id.length() - streetSeparator - 1)
+                    .append(id, streetSeparator + 1, numberSeparator)
+                    .append('#')
+                    .append(id, numberSeparator + 1, id.length())
+                    .toString();
+            sk = result;
+        }
+        return result;
+    }
+
+    public String number() {
+        return id.substring(numberSeparator + 1);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PropertyId && id.equals(((PropertyId) other).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+
+    /**
+     * Lower case with dashes for spaces. Values that are already canonical, as
+     * read from the table, are returned as they are.
+     */
+    private static String canonical(String value) {
+        if (value == null) {
+            return "null";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ' ' || (c >= 'A' && c <= 'Z') || c > 0x7f) {
+                return value.replace(' ', '-').toLowerCase();
+            }
+        }
+        return value;
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
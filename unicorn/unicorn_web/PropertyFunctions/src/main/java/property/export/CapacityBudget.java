@@ -0,0 +1,47 @@
+package property.export;
+
+/**
+ * Read capacity shared by the segments of an export, refilled at a fixed rate.
+ *
+ * Capacity is paid after a page has been read, since only then is its cost
+ * known; the budget may go into debt by one page per segment, and callers wait
+ * until it is paid back. A burst of at most one second of capacity is allowed.
+ */
+final class CapacityBudget {
+
+    private final double perSecond;
+    private double available;
+    private long refilledAt = System.nanoTime();
+    private double consumed;
+
+    CapacityBudget(double perSecond) {
+        if (perSecond <= 0) {
+            throw new IllegalArgumentException("Read capacity must be positive");
+        }
+        this.perSecond = perSecond;
+        this.available = perSecond;
+    }
+
+    void acquire(double units) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            available -= units;
+            consumed += units;
+            waitNanos = available >= 0 ? 0 : (long) (-available / perSecond * 1_000_000_000L);
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    synchronized double consumed() {
+        return consumed;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        available = Math.min(perSecond, available + (now - refilledAt) / 1_000_000_000.0 * perSecond);
+        refilledAt = now;
+    }
+}
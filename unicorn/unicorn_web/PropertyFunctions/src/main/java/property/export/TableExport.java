@@ -0,0 +1,236 @@
+package property.export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import property.dao.Property;
+import property.helper.Clients;
+import property.helper.Json;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+
+/**
+ * Exports the properties of the web table as newline delimited JSON, one file
+ * per scan segment ({@code part-00000.ndjson[.gz]}).
+ *
+ * The segments are scanned in parallel. Each one requests its next page only
+ * after the previous one has been written and its consumed capacity has been
+ * paid from a read capacity budget shared by all segments. Throughput grows
+ * with the number of segments until the budget is used up, and a slow disk
+ * slows the scan down instead of filling the heap.
+ *
+ * <pre>
+ * java -cp PropertyFunctions/target/PropertyWeb-1.0.jar property.export.TableExport \
+ *     &lt;table&gt; &lt;directory&gt; [segments, default 4] [read capacity units per second, default 100] [gzip, default true]
+ * </pre>
+ */
+public class TableExport {
+
+    private static final Logger logger = LogManager.getLogger(TableExport.class);
+
+    private static final int PAGE_SIZE = 500;
+    private static final ObjectWriter PROPERTY_WRITER = Json.writer(Property.class);
+    // skips the partition version items, which are not properties
+    private static final Expression PROPERTIES_ONLY = Expression.builder()
+            .expression("begins_with(PK, :prefix)")
+            .expressionValues(Map.of(":prefix", AttributeValue.fromS("property#")))
+            .build();
+
+    private final DynamoDbAsyncTable<Property> propertyTable;
+    private final int segments;
+    private final CapacityBudget budget;
+    private final boolean gzip;
+
+    private final AtomicLong exported = new AtomicLong();
+
+    public TableExport(DynamoDbAsyncTable<Property> propertyTable, int segments, double readCapacityPerSecond,
+                       boolean gzip) {
+        this.propertyTable = propertyTable;
+        this.segments = segments;
+        this.budget = new CapacityBudget(readCapacityPerSecond);
+        this.gzip = gzip;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: TableExport <table> <directory> [segments] [read capacity per second] [gzip]");
+            System.exit(2);
+        }
+        int segments = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        double capacity = args.length > 3 ? Double.parseDouble(args[3]) : 100;
+        boolean gzip = args.length <= 4 || Boolean.parseBoolean(args[4]);
+        DynamoDbAsyncTable<Property> table = Clients.enhancedDynamoDb().table(args[0],
+                TableSchema.fromBean(Property.class));
+        new TableExport(table, segments, capacity, gzip).export(new File(args[1]));
+    }
+
+    /**
+     * @return the number of properties exported
+     */
+    public long export(File directory) throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        long start = System.nanoTime();
+        // one writer thread per segment, so file I/O and waiting for capacity stay off the SDK threads
+        ExecutorService writers = Executors.newFixedThreadPool(segments);
+        try {
+            List<CompletableFuture<Long>> done = new ArrayList<>();
+            for (int segment = 0; segment < segments; segment++) {
+                File file = new File(directory, String.format("part-%05d.ndjson%s", segment, gzip ? ".gz" : ""));
+                done.add(exportSegment(segment, file, writers));
+            }
+            CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).join();
+        } catch (RuntimeException e) {
+            throw new IOException("Export failed after " + exported.get() + " properties", e);
+        } finally {
+            writers.shutdownNow();
+        }
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        logger.info("Exported {} properties in {} segments in {} ms, {} items/s, {} read capacity units",
+                exported.get(), segments, millis, exported.get() * 1000 / millis, budget.consumed());
+        return exported.get();
+    }
+
+    private CompletableFuture<Long> exportSegment(int segment, File file, ExecutorService writers)
+            throws IOException {
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        if (gzip) {
+            output = new GZIPOutputStream(output, 64 * 1024);
+        }
+        SegmentWriter writer = new SegmentWriter(segment, output, writers);
+        propertyTable.scan(ScanEnhancedRequest.builder()
+                        .segment(segment)
+                        .totalSegments(segments)
+                        .limit(PAGE_SIZE)
+                        .filterExpression(PROPERTIES_ONLY)
+                        .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                        .build())
+                .subscribe(writer);
+        return writer.done;
+    }
+
+    /**
+     * Writes the pages of one segment, requesting them one at a time.
+     */
+    private final class SegmentWriter implements Subscriber<Page<Property>> {
+
+        private final int segment;
+        private final OutputStream output;
+        private final ExecutorService writers;
+        private final CompletableFuture<Long> done = new CompletableFuture<>();
+        private Subscription subscription;
+        private long count;
+
+        SegmentWriter(int segment, OutputStream output, ExecutorService writers) {
+            this.segment = segment;
+            this.output = output;
+            this.writers = writers;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Page<Property> page) {
+            writers.execute(() -> {
+                try {
+                    for (Property property : page.items()) {
+                        PROPERTY_WRITER.writeValue(new NonClosingOutputStream(output), property);
+                        output.write('\n');
+                    }
+                    count += page.items().size();
+                    exported.addAndGet(page.items().size());
+                    if (page.consumedCapacity() != null) {
+                        budget.acquire(page.consumedCapacity().capacityUnits());
+                    }
+                    subscription.request(1);
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    subscription.cancel();
+                    fail(e);
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            writers.execute(() -> fail(error));
+        }
+
+        @Override
+        public void onComplete() {
+            writers.execute(() -> {
+                try {
+                    output.close();
+                    logger.info("Segment {} exported {} properties", segment, count);
+                    done.complete(count);
+                } catch (IOException e) {
+                    done.completeExceptionally(new UncheckedIOException(e));
+                }
+            });
+        }
+
+        private void fail(Throwable error) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                error.addSuppressed(e);
+            }
+            done.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Lets Jackson write a value per line without closing the file after it.
+     */
+    private static final class NonClosingOutputStream extends OutputStream {
+
+        private final OutputStream target;
+
+        NonClosingOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            target.write(buffer, offset, length);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package property.helper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared JSON serialization for the handlers of this module.
+ *
+ * There is one {@link ObjectMapper} per container and one {@link ObjectReader} /
+ * {@link ObjectWriter} per type, so the (de)serializers are resolved only once.
+ * Setting {@code JSON_BLACKBIRD_ENABLED=true} registers the Blackbird module,
+ * which replaces reflective accessors with generated lambdas.
+ */
+public final class Json {
+
+    private static final boolean BLACKBIRD_ENABLED = Boolean.parseBoolean(System.getenv("JSON_BLACKBIRD_ENABLED"));
+    private static final ObjectMapper MAPPER = newObjectMapper();
+    private static final Map<JavaType, ObjectReader> READERS = new ConcurrentHashMap<>();
+    private static final Map<JavaType, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    private Json() {
+    }
+
+    /**
+     * Creates a mapper with the module wide configuration, for callers that need
+     * their own settings on top of it.
+     */
+    public static ObjectMapper newObjectMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        if (BLACKBIRD_ENABLED) {
+            mapper.registerModule(new BlackbirdModule());
+        }
+        return mapper;
+    }
+
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    public static ObjectReader reader(Class<?> type) {
+        return reader(MAPPER.constructType(type));
+    }
+
+    public static ObjectReader reader(JavaType type) {
+        return READERS.computeIfAbsent(type, MAPPER::readerFor);
+    }
+
+    public static ObjectWriter writer(Class<?> type) {
+        return writer(MAPPER.constructType(type));
+    }
+
+    public static ObjectWriter writer(JavaType type) {
+        return WRITERS.computeIfAbsent(type, MAPPER::writerFor);
+    }
+
+    public static <T> T read(String json, Class<T> type) throws JsonProcessingException {
+        return reader(type).readValue(json);
+    }
+
+    public static <T> T read(InputStream input, Class<T> type) throws IOException {
+        return reader(type).readValue(input);
+    }
+
+    public static JsonNode readTree(InputStream input) throws IOException {
+        return MAPPER.readTree(input);
+    }
+
+    public static String write(Object value) throws JsonProcessingException {
+        return writer(value.getClass()).writeValueAsString(value);
+    }
+
+    public static void write(OutputStream output, Object value) throws IOException {
+        writer(value.getClass()).writeValue(output, value);
+    }
+}
@@ -0,0 +1,241 @@
+package property.populate;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import property.dao.PartitionVersions;
+import property.dao.Property;
+import property.helper.Clients;
+import property.helper.Json;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+/**
+ * Loads a JSON array of properties, such as {@code data/property_data.json},
+ * or the newline delimited JSON of a {@link property.export.TableExport}
+ * segment, gzipped or not, into the web table.
+ *
+ * The file is read with a streaming parser, one property at a time, and
+ * written in BatchWriteItem calls of 25 items, several of them in flight at
+ * once. Unprocessed items are retried with exponential backoff and jitter.
+ * Progress and the final rate are logged in items per second. Once the writes
+ * are done, the version stamp of every partition the file touched is increased,
+ * so searches cached before the load are not served any more.
+ *
+ * <pre>
+ * java -cp PropertyFunctions/target/PropertyWeb-1.0.jar property.populate.BulkLoader \
+ *     &lt;table&gt; &lt;file&gt; [concurrent batches, default 8]
+ * </pre>
+ * The HTTP client and retries of the SDK itself are tuned with the usual
+ * environment variables, see {@link Clients}; keep {@code HTTP_MAX_CONNECTIONS}
+ * above the number of concurrent batches.
+ */
+public class BulkLoader {
+
+    private static final Logger logger = LogManager.getLogger(BulkLoader.class);
+
+    private static final int BATCH_SIZE = 25;
+    private static final int MAX_ATTEMPTS = 10;
+    private static final long BASE_DELAY_MILLIS = 50;
+    private static final long MAX_DELAY_MILLIS = 5_000;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final DynamoDbAsyncClient dynamodbClient;
+    private final String tableName;
+    private final int concurrency;
+    private final Semaphore inFlight;
+    private final TableSchema<Property> schema = TableSchema.fromBean(Property.class);
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public BulkLoader(DynamoDbAsyncClient dynamodbClient, String tableName, int concurrency) {
+        this.dynamodbClient = dynamodbClient;
+        this.tableName = tableName;
+        this.concurrency = concurrency;
+        this.inFlight = new Semaphore(concurrency);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: BulkLoader <table> <file> [concurrent batches]");
+            System.exit(2);
+        }
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long count = new BulkLoader(Clients.dynamoDb(), args[0], concurrency).load(new File(args[1]));
+        logger.info("Loaded {} properties into {}", count, args[0]);
+    }
+
+    /**
+     * @return the number of properties written
+     * @throws IOException when the file cannot be parsed or a batch failed for good
+     */
+    public long load(File file) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long lastReport = start;
+        long read = 0;
+        Set<String> partitions = new HashSet<>();
+        List<WriteRequest> batch = new ArrayList<>(BATCH_SIZE);
+
+        try (JsonParser parser = Json.mapper().getFactory().createParser(open(file))) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                token = parser.nextToken();
+            } else if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON array or newline delimited properties in " + file);
+            }
+            for (; token == JsonToken.START_OBJECT && failure.get() == null; token = parser.nextToken()) {
+                JsonNode node = Json.mapper().readTree(parser);
+                Property property = toProperty(node);
+                partitions.add(property.getPk());
+                Map<String, AttributeValue> item = schema.itemToMap(property, true);
+                batch.add(WriteRequest.builder().putRequest(PutRequest.builder().item(item).build()).build());
+                read++;
+                if (batch.size() == BATCH_SIZE) {
+                    submit(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+                long now = System.nanoTime();
+                if (now - lastReport > PROGRESS_INTERVAL_NANOS) {
+                    lastReport = now;
+                    logger.info("Read {}, written {} properties, {} items/s", read, written.get(),
+                            rate(written.get(), start, now));
+                }
+            }
+        }
+        if (!batch.isEmpty() && failure.get() == null) {
+            submit(batch);
+        }
+        // all permits are back once the last batch has completed
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        // also after a failure, the batches written before it changed their partitions
+        bumpVersions(partitions);
+
+        if (failure.get() != null) {
+            throw new IOException("Bulk load failed after " + written.get() + " properties", failure.get());
+        }
+        long end = System.nanoTime();
+        logger.info("Wrote {} properties in {} ms, {} items/s", written.get(),
+                TimeUnit.NANOSECONDS.toMillis(end - start), rate(written.get(), start, end));
+        return written.get();
+    }
+
+    private static InputStream open(File file) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        return file.getName().endsWith(".gz") ? new GZIPInputStream(input) : input;
+    }
+
+    private void bumpVersions(Set<String> partitions) {
+        try {
+            CompletableFuture.allOf(partitions.stream()
+                            .map(partition -> PartitionVersions.increment(dynamodbClient, tableName, partition))
+                            .toArray(CompletableFuture[]::new))
+                    .join();
+            logger.info("Increased the version of {} partitions", partitions.size());
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private void submit(List<WriteRequest> batch) throws InterruptedException {
+        inFlight.acquire();
+        write(batch, 1)
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        failure.compareAndSet(null, error);
+                    } else {
+                        written.addAndGet(batch.size());
+                    }
+                    inFlight.release();
+                });
+    }
+
+    private CompletableFuture<Void> write(List<WriteRequest> requests, int attempt) {
+        return dynamodbClient.batchWriteItem(request -> request.requestItems(Map.of(tableName, requests)))
+                .thenCompose(response -> {
+                    List<WriteRequest> unprocessed = unprocessed(response);
+                    if (unprocessed.isEmpty()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (attempt >= MAX_ATTEMPTS) {
+                        return CompletableFuture.failedFuture(new IllegalStateException(
+                                unprocessed.size() + " items still unprocessed after " + attempt + " attempts"));
+                    }
+                    return CompletableFuture.runAsync(() -> { },
+                                    CompletableFuture.delayedExecutor(backoff(attempt), TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> write(unprocessed, attempt + 1));
+                });
+    }
+
+    private List<WriteRequest> unprocessed(BatchWriteItemResponse response) {
+        if (!response.hasUnprocessedItems()) {
+            return List.of();
+        }
+        return response.unprocessedItems().getOrDefault(tableName, List.of());
+    }
+
+    private static long backoff(int attempt) {
+        long ceiling = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    private static long rate(long count, long start, long now) {
+        long nanos = Math.max(1, now - start);
+        return count * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * Maps an entry of the data file or of an export, which names the number
+     * {@code propertyNumber}. Key attributes are ignored, the bean derives them
+     * from the address.
+     */
+    static Property toProperty(JsonNode node) {
+        Property property = new Property();
+        property.setCountry(node.path("country").asText(null));
+        property.setCity(node.path("city").asText(null));
+        property.setStreet(node.path("street").asText(null));
+        property.setPropertyNumber(node.hasNonNull("number")
+                ? node.get("number").asText()
+                : node.path("propertyNumber").asText(null));
+        property.setDescription(node.path("description").asText(null));
+        property.setContract(node.path("contract").asText(null));
+        if (node.hasNonNull("listprice")) {
+            property.setListprice((float) node.get("listprice").asDouble());
+        }
+        property.setCurrency(node.path("currency").asText(null));
+        if (node.has("images")) {
+            List<String> images = new ArrayList<>();
+            node.get("images").forEach(image -> images.add(image.asText()));
+            property.setImages(images);
+        }
+        property.setStatus(node.hasNonNull("status") ? node.get("status").asText() : "NEW");
+        return property;
+    }
+}
@@ -7,11 +7,11 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.events.CloudFormationCustomResourceEvent;
 
 import property.dao.Property;
+import property.helper.Clients;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 
-import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.lambda.powertools.cloudformation.AbstractCustomResourceHandler;
 import software.amazon.lambda.powertools.cloudformation.Response;
@@ -23,15 +23,9 @@ public class PopulateDataFunction extends AbstractCustomResourceHandler {
     String[] validKeys = { "country", "city", "street", "number", "description", "contract", "listprice", "currency",
             "images" };
 
-    DynamoDbAsyncClient dynamodbClient = DynamoDbAsyncClient.builder()
-            .httpClientBuilder(NettyNioAsyncHttpClient.builder()
-                    .maxConcurrency(100)
-                    .maxPendingConnectionAcquires(10_000))
-            .build();
+    DynamoDbAsyncClient dynamodbClient = Clients.dynamoDb();
 
-    DynamoDbEnhancedAsyncClient enhancedClient = DynamoDbEnhancedAsyncClient.builder()
-            .dynamoDbClient(dynamodbClient)
-            .build();
+    DynamoDbEnhancedAsyncClient enhancedClient = Clients.enhancedDynamoDb();
 
     @Override
     protected Response create(CloudFormationCustomResourceEvent createEvent, Context context) {
@@ -0,0 +1,162 @@
+package property.requestapproval;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import property.dao.PropertyId;
+import property.helper.Priming;
+import schema.unicorn_properties.publicationevaluationcompleted.AWSEvent;
+import schema.unicorn_properties.publicationevaluationcompleted.PublicationEvaluationCompleted;
+import schema.unicorn_properties.publicationevaluationcompleted.marshaller.Marshaller;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+
+/**
+ * Applies PublicationEvaluationCompleted events buffered in SQS, a batch per
+ * invocation.
+ *
+ * Events for the same property, by its canonical id, are collapsed to the
+ * latest one by event time, the others are dropped. The remaining updates run concurrently, at most
+ * {@code PUBLICATION_MAX_IN_FLIGHT} at a time, through
+ * {@link PublicationApprovedFunction#updateStatus}. Records that could not be
+ * read or whose update failed are reported back as batch item failures, so
+ * only they are retried.
+ */
+public class PublicationApprovedBatchFunction implements RequestHandler<SQSEvent, SQSBatchResponse> {
+
+    private static final Logger logger = LogManager.getLogger(PublicationApprovedBatchFunction.class);
+
+    private static final int MAX_IN_FLIGHT = Integer.parseInt(
+            Optional.ofNullable(System.getenv("PUBLICATION_MAX_IN_FLIGHT")).orElse("25"));
+    private static final String NAMESPACE = System.getenv("SERVICE_NAMESPACE");
+    private static final String PRIMING_EVENT = "{\"detail-type\": \"PublicationEvaluationCompleted\", "
+            + "\"source\": \"priming\", \"time\": \"2024-01-01T00:00:00Z\", \"detail\": "
+            + "{\"evaluation_result\": \"APPROVED\", \"property_id\": \"priming/priming/priming/0\"}}";
+
+    private final PublicationApprovedFunction publication = new PublicationApprovedFunction();
+
+    private final Priming priming = Priming.register(
+            PublicationApprovedBatchFunction.class.getSimpleName(), this::prime, () -> { });
+
+    @Override
+    public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+        long start = System.currentTimeMillis();
+        List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+
+        Map<PropertyId, Latest> latest = collapse(event.getRecords(), failures);
+
+        AtomicInteger changed = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        List<CompletableFuture<Void>> updates = new ArrayList<>(latest.size());
+        for (Map.Entry<PropertyId, Latest> entry : latest.entrySet()) {
+            Latest update = entry.getValue();
+            inFlight.acquireUninterruptibly();
+            updates.add(publication.updateStatus(entry.getKey(), update.status)
+                    .handle((statusChanged, error) -> {
+                        inFlight.release();
+                        if (error != null) {
+                            logger.error("Cannot update property {}: {}", entry.getKey(), error.getMessage());
+                            synchronized (failures) {
+                                failures.add(new SQSBatchResponse.BatchItemFailure(update.messageId));
+                            }
+                        } else if (statusChanged) {
+                            changed.incrementAndGet();
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(updates.toArray(new CompletableFuture[0])).join();
+
+        long now = System.currentTimeMillis();
+        long oldest = latest.values().stream().mapToLong(update -> update.time)
+                .filter(time -> time > 0).min().orElse(now);
+        MetricsLogger metrics = new MetricsLogger();
+        if (NAMESPACE != null) {
+            metrics.setNamespace(NAMESPACE);
+        }
+        metrics.putMetric("PublicationBatchSize", event.getRecords().size(), Unit.COUNT);
+        metrics.putMetric("PublicationUpdates", latest.size(), Unit.COUNT);
+        metrics.putMetric("PublicationStatusChanges", changed.get(), Unit.COUNT);
+        metrics.putMetric("PublicationFailures", failures.size(), Unit.COUNT);
+        metrics.putMetric("PublicationBatchDuration", now - start, Unit.MILLISECONDS);
+        metrics.putMetric("PublicationMaxEventAge", now - oldest, Unit.MILLISECONDS);
+        metrics.flush();
+
+        return new SQSBatchResponse(failures);
+    }
+
+    /**
+     * @return the latest update per property id, in the order of the batch
+     */
+    static Map<PropertyId, Latest> collapse(List<SQSEvent.SQSMessage> records,
+                                            List<SQSBatchResponse.BatchItemFailure> failures) {
+        Map<PropertyId, Latest> latest = new LinkedHashMap<>();
+        for (SQSEvent.SQSMessage record : records) {
+            AWSEvent<PublicationEvaluationCompleted> event;
+            PropertyId propertyId;
+            try {
+                event = unmarshal(record.getBody());
+                propertyId = PropertyId.normalize(event.getDetail().getPropertyId());
+            } catch (IOException | RuntimeException e) {
+                logger.error("Cannot read message {}: {}", record.getMessageId(), e.getMessage());
+                failures.add(new SQSBatchResponse.BatchItemFailure(record.getMessageId()));
+                continue;
+            }
+            PublicationEvaluationCompleted detail = event.getDetail();
+            long time = Optional.ofNullable(event.getTime()).map(Date::getTime).orElse(0L);
+            // on equal times the later record wins
+            latest.merge(propertyId,
+                    new Latest(record.getMessageId(), detail.getEvaluationResult(), time),
+                    (current, candidate) -> candidate.time >= current.time ? candidate : current);
+        }
+        return latest;
+    }
+
+    private static AWSEvent<PublicationEvaluationCompleted> unmarshal(String body) throws IOException {
+        return Marshaller.unmarshalEvent(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                PublicationEvaluationCompleted.class);
+    }
+
+    private void prime() {
+        try {
+            AWSEvent<PublicationEvaluationCompleted> event = unmarshal(PRIMING_EVENT);
+            event.getTime();
+            PropertyId.normalize(event.getDetail().getPropertyId()).pk();
+            new SQSBatchResponse(List.of(new SQSBatchResponse.BatchItemFailure("priming")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static final class Latest {
+
+        final String messageId;
+        final String status;
+        final long time;
+
+        Latest(String messageId, String status, long time) {
+            this.messageId = messageId;
+            this.status = status;
+            this.time = time;
+        }
+    }
+}
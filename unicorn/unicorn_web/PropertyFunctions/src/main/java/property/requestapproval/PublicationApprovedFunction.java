@@ -1,53 +1,65 @@
 package property.requestapproval;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import com.amazonaws.services.lambda.runtime.Context;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import property.dao.PartitionVersions;
 import property.dao.Property;
+import property.dao.PropertyId;
+import property.helper.Clients;
+import property.helper.Json;
+import property.helper.Priming;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.UpdateItemEnhancedRequest;
-import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import schema.unicorn_properties.publicationevaluationcompleted.marshaller.Marshaller;
 import schema.unicorn_properties.publicationevaluationcompleted.AWSEvent;
 import schema.unicorn_properties.publicationevaluationcompleted.PublicationEvaluationCompleted;
 
 /**
- * Function checks for the existence of a contract status entry for a specified
- * property.
- * 
- * If an entry exists, pause the workflow, and update the record with task
- * token.
+ * Applies a PublicationEvaluationCompleted event: sets the evaluation result as
+ * the status of the property and invalidates the search results cached for its
+ * partition.
  */
 public class PublicationApprovedFunction {
 
+        private static final String PRIMING_EVENT = "{\"detail-type\": \"PublicationEvaluationCompleted\", "
+                        + "\"source\": \"priming\", \"detail\": {\"evaluation_result\": \"APPROVED\", "
+                        + "\"property_id\": \"priming/priming/priming/0\"}}";
+
         Logger logger = LogManager.getLogger();
 
         final String TABLE_NAME = System.getenv("DYNAMODB_TABLE");
-        DynamoDbAsyncClient dynamodbClient = DynamoDbAsyncClient.builder()
-                        .httpClientBuilder(NettyNioAsyncHttpClient.builder())
-                        .build();
+        DynamoDbAsyncClient dynamodbClient = Clients.dynamoDb();
 
-        DynamoDbEnhancedAsyncClient enhancedClient = DynamoDbEnhancedAsyncClient.builder()
-                        .dynamoDbClient(dynamodbClient)
-                        .build();
+        DynamoDbEnhancedAsyncClient enhancedClient = Clients.enhancedDynamoDb();
 
         DynamoDbAsyncTable<Property> propertyTable = enhancedClient.table(TABLE_NAME,
                         TableSchema.fromBean(Property.class));
 
+        private final Priming priming = Priming.register(
+                        PublicationApprovedFunction.class.getSimpleName(), this::prime, this::reconnect);
+
 
         public void handleRequest(InputStream inputStream, OutputStream outputStream,
                         Context context) throws IOException {
@@ -60,38 +72,111 @@ public class PublicationApprovedFunction {
 
             publicationApproved(evaluationResult, propertyId);
 
-                ObjectMapper objectMapper = new ObjectMapper();
                 OutputStreamWriter writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
-                writer.write(objectMapper.writeValueAsString("'result': 'Successfully updated property status'"));
+                writer.write(Json.write("'result': 'Successfully updated property status'"));
                 writer.close();
 
         }
 
-        private void publicationApproved(String evaluationResult, String propertyId) {
+        private void prime() {
+                try {
+                        AWSEvent<PublicationEvaluationCompleted> event = Marshaller.unmarshalEvent(
+                                        new ByteArrayInputStream(PRIMING_EVENT.getBytes(StandardCharsets.UTF_8)),
+                                        PublicationEvaluationCompleted.class);
+                        Property property = new Property();
+                        property.setCountry("priming");
+                        property.setCity("priming");
+                        property.setStreet("priming");
+                        property.setPropertyNumber("0");
+                        property.setStatus(event.getDetail().getEvaluationResult());
+                        propertyTable.tableSchema().mapToItem(propertyTable.tableSchema().itemToMap(property, true));
+                        Json.write("'result': 'Successfully updated property status'");
+                } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                }
+        }
+
+        private void reconnect() {
+                propertyTable.getItem(Key.builder()
+                                .partitionValue("property#priming#priming")
+                                .sortValue("priming#0")
+                                .build()).join();
+        }
 
-                String[] splitString = propertyId.split("/");
-                String country = splitString[0];
-                String city = splitString[1];
-                String street = splitString[2];
-                String number = splitString[3];
-                String strPartionKey = ("property#" + country + "#" + city).replace(' ', '-').toLowerCase();
-                String strSortKey = (street + "#" + number).replace(' ', '-').toLowerCase();
-
-                Key key = Key.builder().partitionValue(strPartionKey).sortValue(strSortKey).build();
-                Property existingProperty = propertyTable.getItem(key).join();
-                
-                if (existingProperty == null) {
-                    logger.error("Property not found for ID: {}", propertyId);
-                    throw new RuntimeException("Property not found with ID: " + propertyId);
+        private void publicationApproved(String evaluationResult, String propertyId) {
+                try {
+                        updateStatus(PropertyId.normalize(propertyId), evaluationResult).join();
+                } catch (CompletionException e) {
+                        if (e.getCause() instanceof RuntimeException) {
+                                throw (RuntimeException) e.getCause();
+                        }
+                        throw e;
                 }
-                
+        }
+
+        /**
+         * Sets the status of a property with a single conditional update, instead of
+         * reading and rewriting the whole item. The approved index keys follow the
+         * status. The update is skipped when the property already has the status.
+         *
+         * The partition version is bumped in a second write, also when the status was
+         * already set: a retry after a failed bump finds the status written, and must
+         * still invalidate the cached searches. A replayed event only costs a stamp.
+         *
+         * @return whether the status changed; fails when the property does not exist
+         */
+        CompletableFuture<Boolean> updateStatus(PropertyId propertyId, String status) {
+
+                String number = propertyId.number();
+
+                Map<String, String> names = new HashMap<>();
+                names.put("#status", "status");
+                names.put("#number", "number");
+                Map<String, AttributeValue> values = new HashMap<>();
+                values.put(":status", AttributeValue.fromS(status));
                 // Always set the property number explicitly to ensure it's correct
-                existingProperty.setPropertyNumber(number);
-                existingProperty.setStatus(evaluationResult);
-                
-                logger.info("Updating property with status: {} and propertyNumber: {}", 
-                           evaluationResult, existingProperty.getPropertyNumber());
-                propertyTable.putItem(existingProperty).join();
+                values.put(":number", AttributeValue.fromS(number));
+                String update = "SET #status = :status, #number = :number";
+                if (Property.APPROVED.equals(status)) {
+                        names.put("#approvedPk", "ApprovedPK");
+                        names.put("#approvedSk", "ApprovedSK");
+                        update += ", #approvedPk = PK, #approvedSk = SK";
+                } else {
+                        update += " REMOVE ApprovedPK, ApprovedSK";
+                }
+
+                logger.info("Updating property {} with status: {} and propertyNumber: {}", propertyId, status, number);
+                return dynamodbClient.updateItem(UpdateItemRequest.builder()
+                                .tableName(TABLE_NAME)
+                                .key(Map.of("PK", AttributeValue.fromS(propertyId.pk()),
+                                                "SK", AttributeValue.fromS(propertyId.sk())))
+                                .updateExpression(update)
+                                .conditionExpression("attribute_exists(PK)"
+                                                + " AND (attribute_not_exists(#status) OR #status <> :status)")
+                                .expressionAttributeNames(names)
+                                .expressionAttributeValues(values)
+                                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                                .build())
+                        .handle((response, error) -> {
+                                if (error == null) {
+                                        return true;
+                                }
+                                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                                if (!(cause instanceof ConditionalCheckFailedException)) {
+                                        throw new CompletionException(cause);
+                                }
+                                if (!((ConditionalCheckFailedException) cause).hasItem()) {
+                                        logger.error("Property not found for ID: {}", propertyId);
+                                        throw new CompletionException(
+                                                        new RuntimeException("Property not found with ID: " + propertyId));
+                                }
+                                logger.info("Property {} is already {}", propertyId, status);
+                                return false;
+                        })
+                        // invalidates the search results cached for the partition
+                        .thenCompose(changed -> PartitionVersions
+                                        .increment(dynamodbClient, TABLE_NAME, propertyId.pk())
+                                        .thenApply(ignored -> changed));
         }
 
 }
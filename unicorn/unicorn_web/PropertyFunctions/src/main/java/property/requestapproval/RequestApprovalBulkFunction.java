@@ -0,0 +1,270 @@
+package property.requestapproval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import property.dao.Property;
+import property.dao.PropertyId;
+import property.helper.Json;
+import property.helper.Priming;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.eventbridge.model.PutEventsRequestEntry;
+import software.amazon.awssdk.services.eventbridge.model.PutEventsResultEntry;
+
+/**
+ * Requests the approval of many properties at once.
+ *
+ * The body is {@code {"property_ids": ["usa/anytown/main-street/111", ...]}}.
+ * The properties are read with BatchGetItem, and the approval events are sent
+ * in PutEvents calls of 10 entries, several calls at a time. The response
+ * lists a result per property id: {@code REQUESTED}, {@code NO_ACTION} when it
+ * is already approved, {@code INVALID_ID}, {@code NOT_FOUND}, or {@code FAILED}
+ * with the error EventBridge reported for its entry.
+ */
+public class RequestApprovalBulkFunction
+        implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final Logger logger = LogManager.getLogger(RequestApprovalBulkFunction.class);
+
+    private static final int MAX_PROPERTIES = Integer.parseInt(
+            Optional.ofNullable(System.getenv("BULK_APPROVAL_MAX_PROPERTIES")).orElse("100"));
+    private static final int GET_BATCH_SIZE = 100;
+    private static final int PUT_EVENTS_BATCH_SIZE = 10;
+    private static final int MAX_GET_ATTEMPTS = 5;
+
+    private final RequestApprovalFunction approval = new RequestApprovalFunction();
+
+    private final Priming priming = Priming.register(
+            RequestApprovalBulkFunction.class.getSimpleName(), this::prime, () -> { });
+
+    @Override
+    public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent input, Context context) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("X-Custom-Header", "application/json");
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent()
+                .withHeaders(headers);
+
+        Set<String> propertyIds = new LinkedHashSet<>();
+        try {
+            JsonNode ids = Json.mapper().readTree(input.getBody()).get("property_ids");
+            if (ids == null || !ids.isArray() || ids.size() == 0 || ids.size() > MAX_PROPERTIES) {
+                throw new IllegalArgumentException("property_ids must list 1 to " + MAX_PROPERTIES + " ids");
+            }
+            ids.forEach(id -> propertyIds.add(id.asText()));
+        } catch (JsonProcessingException | IllegalArgumentException | NullPointerException e) {
+            return response
+                    .withStatusCode(400)
+                    .withBody("{ \"message\": \"ErrorInRequest\",  \"requestdetails\": \"Input Invalid\" }");
+        }
+
+        try {
+            List<ApprovalResult> results = requestApprovals(propertyIds);
+            return response
+                    .withStatusCode(200)
+                    .withBody(Json.write(new ApprovalResults(results)));
+        } catch (Exception e) {
+            logger.error("Bulk approval request failed", e);
+            return response
+                    .withStatusCode(500)
+                    .withBody("{ \"message\": \"ErrorInRequest\",  \"requestdetails\": \"Cannot Process Request\" }");
+        }
+    }
+
+    List<ApprovalResult> requestApprovals(Set<String> propertyIds) throws Exception {
+        Map<String, ApprovalResult> results = new LinkedHashMap<>();
+        Map<Map<String, AttributeValue>, String> idsByKey = new LinkedHashMap<>();
+        for (String propertyId : propertyIds) {
+            PropertyId id = PropertyId.parse(propertyId);
+            if (id == null) {
+                results.put(propertyId, new ApprovalResult(propertyId, "INVALID_ID", null));
+                continue;
+            }
+            results.put(propertyId, new ApprovalResult(propertyId, "NOT_FOUND", null));
+            idsByKey.put(Map.of("PK", AttributeValue.fromS(id.pk()), "SK", AttributeValue.fromS(id.sk())), propertyId);
+        }
+
+        List<Property> toRequest = new ArrayList<>();
+        List<String> toRequestIds = new ArrayList<>();
+        for (Map<String, AttributeValue> item : getItems(new ArrayList<>(idsByKey.keySet()))) {
+            String propertyId = idsByKey.get(Map.of("PK", item.get("PK"), "SK", item.get("SK")));
+            Property property = approval.propertyTable.tableSchema().mapToItem(item);
+            if (approval.noActionSet.contains(property.getStatus())) {
+                results.put(propertyId, new ApprovalResult(propertyId, "NO_ACTION",
+                        "Property is already " + property.getStatus()));
+            } else {
+                toRequest.add(property);
+                toRequestIds.add(propertyId);
+            }
+        }
+
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        for (int from = 0; from < toRequest.size(); from += PUT_EVENTS_BATCH_SIZE) {
+            int to = Math.min(from + PUT_EVENTS_BATCH_SIZE, toRequest.size());
+            List<Property> batch = toRequest.subList(from, to);
+            List<String> batchIds = toRequestIds.subList(from, to);
+            List<PutEventsRequestEntry> entries = new ArrayList<>(batch.size());
+            for (Property property : batch) {
+                entries.add(approval.toEntry(property));
+            }
+            calls.add(approval.eventBridgeClient.putEvents(request -> request.entries(entries))
+                    .handle((putEvents, error) -> {
+                        for (int i = 0; i < batch.size(); i++) {
+                            String propertyId = batchIds.get(i);
+                            ApprovalResult result;
+                            if (error != null) {
+                                result = new ApprovalResult(propertyId, "FAILED", error.getMessage());
+                            } else {
+                                // result entries are in the order of the request entries
+                                PutEventsResultEntry entry = putEvents.entries().get(i);
+                                result = entry.errorCode() == null
+                                        ? new ApprovalResult(propertyId, "REQUESTED", null)
+                                        : new ApprovalResult(propertyId, "FAILED",
+                                                entry.errorCode() + ": " + entry.errorMessage());
+                            }
+                            synchronized (results) {
+                                results.put(propertyId, result);
+                            }
+                        }
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).join();
+
+        synchronized (results) {
+            return new ArrayList<>(results.values());
+        }
+    }
+
+    /**
+     * Reads the approval attributes of the keys, retrying unprocessed keys with
+     * backoff. Keys without an item are left out.
+     */
+    private List<Map<String, AttributeValue>> getItems(List<Map<String, AttributeValue>> keys) {
+        List<CompletableFuture<List<Map<String, AttributeValue>>>> reads = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += GET_BATCH_SIZE) {
+            reads.add(getBatch(keys.subList(from, Math.min(from + GET_BATCH_SIZE, keys.size())), 1));
+        }
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        for (CompletableFuture<List<Map<String, AttributeValue>>> read : reads) {
+            items.addAll(read.join());
+        }
+        return items;
+    }
+
+    private CompletableFuture<List<Map<String, AttributeValue>>> getBatch(List<Map<String, AttributeValue>> keys,
+                                                                         int attempt) {
+        Map<String, String> names = new HashMap<>();
+        StringBuilder projection = new StringBuilder("PK, SK");
+        for (String attribute : RequestApprovalFunction.APPROVAL_ATTRIBUTES) {
+            String name = "#a" + names.size();
+            names.put(name, attribute);
+            projection.append(", ").append(name);
+        }
+        KeysAndAttributes request = KeysAndAttributes.builder()
+                .keys(keys)
+                .projectionExpression(projection.toString())
+                .expressionAttributeNames(names)
+                .build();
+        return approval.dynamodbClient.batchGetItem(batch -> batch.requestItems(Map.of(approval.TABLE_NAME, request)))
+                .thenCompose(response -> {
+                    List<Map<String, AttributeValue>> items = new ArrayList<>(
+                            response.responses().getOrDefault(approval.TABLE_NAME, List.of()));
+                    List<Map<String, AttributeValue>> unprocessed = unprocessed(response, approval.TABLE_NAME);
+                    if (unprocessed.isEmpty()) {
+                        return CompletableFuture.completedFuture(items);
+                    }
+                    if (attempt >= MAX_GET_ATTEMPTS) {
+                        return CompletableFuture.failedFuture(new IllegalStateException(
+                                unprocessed.size() + " keys still unprocessed after " + attempt + " attempts"));
+                    }
+                    long delay = ThreadLocalRandom.current().nextLong(25L << attempt, (50L << attempt) + 1);
+                    return CompletableFuture.runAsync(() -> { },
+                                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> getBatch(unprocessed, attempt + 1))
+                            .thenApply(retried -> {
+                                items.addAll(retried);
+                                return items;
+                            });
+                });
+    }
+
+    private static List<Map<String, AttributeValue>> unprocessed(BatchGetItemResponse response, String table) {
+        if (!response.hasUnprocessedKeys() || !response.unprocessedKeys().containsKey(table)) {
+            return List.of();
+        }
+        return response.unprocessedKeys().get(table).keys();
+    }
+
+    private void prime() {
+        try {
+            Json.write(new ApprovalResults(List.of(
+                    new ApprovalResult("priming/priming/priming/0", "REQUESTED", null))));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static class ApprovalResults {
+
+        List<ApprovalResult> results;
+
+        ApprovalResults(List<ApprovalResult> results) {
+            this.results = results;
+        }
+
+        public List<ApprovalResult> getResults() {
+            return results;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class ApprovalResult {
+
+        @JsonProperty("property_id")
+        String propertyId;
+        String result;
+        String error;
+
+        ApprovalResult(String propertyId, String result, String error) {
+            this.propertyId = propertyId;
+            this.result = result;
+            this.error = error;
+        }
+
+        public String getPropertyId() {
+            return propertyId;
+        }
+
+        public String getResult() {
+            return result;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
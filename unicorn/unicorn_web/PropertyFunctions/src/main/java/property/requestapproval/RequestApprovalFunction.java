@@ -7,10 +7,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
@@ -19,21 +16,21 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import property.dao.Property;
-import software.amazon.awssdk.core.async.SdkPublisher;
+import property.dao.PropertyId;
+import property.dao.PropertyReads;
+import property.helper.Clients;
+import property.helper.Json;
+import property.helper.Priming;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
-import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
-import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
@@ -47,32 +44,31 @@ import software.amazon.awssdk.services.eventbridge.model.PutEventsRequestEntry;
  */
 public class RequestApprovalFunction {
 
+    private static final String PRIMING_PROPERTY_ID = "priming/priming/priming/0";
+    // what the status check and the approval event read, the id is derived from the address
+    static final List<String> APPROVAL_ATTRIBUTES = List.of("country", "city", "street", "number", "status");
+
     Logger logger = LogManager.getLogger();
     Set<String> noActionSet = new HashSet<String>(Arrays.asList("APPROVED"));
     String SERVICE = "Unicorn.Web";
+    // the grammar PropertyId.parse checks, quoted in the error response
     String EXPRESSION = "[a-z-]+\\/[a-z-]+\\/[a-z][a-z0-9-]*\\/[0-9-]+";
     String TARGET_STATE = "PENDING";
-    Pattern pattern = Pattern.compile(EXPRESSION);
 
     String TABLE_NAME = System.getenv("DYNAMODB_TABLE");
     String EVENT_BUS = System.getenv("EVENT_BUS");
 
-    DynamoDbAsyncClient dynamodbClient = DynamoDbAsyncClient.builder()
-            .httpClientBuilder(NettyNioAsyncHttpClient.builder())
-            .build();
+    DynamoDbAsyncClient dynamodbClient = Clients.dynamoDb();
 
-    DynamoDbEnhancedAsyncClient enhancedClient = DynamoDbEnhancedAsyncClient.builder()
-            .dynamoDbClient(dynamodbClient)
-            .build();
+    DynamoDbEnhancedAsyncClient enhancedClient = Clients.enhancedDynamoDb();
 
     DynamoDbAsyncTable<Property> propertyTable = enhancedClient.table(TABLE_NAME,
             TableSchema.fromBean(Property.class));
 
-    EventBridgeAsyncClient eventBridgeClient = EventBridgeAsyncClient.builder()
-            .httpClientBuilder(NettyNioAsyncHttpClient.builder())
-            .build();
+    EventBridgeAsyncClient eventBridgeClient = Clients.eventBridge();
 
-    ObjectMapper objectMapper = new ObjectMapper();
+    private final Priming priming = Priming.register(
+            RequestApprovalFunction.class.getSimpleName(), this::prime, this::reconnect);
 
     public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input,
             final Context context) throws JsonMappingException, JsonProcessingException {
@@ -84,32 +80,22 @@ public class RequestApprovalFunction {
             APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent()
                     .withHeaders(headers);
 
-            JsonNode rootNode = objectMapper.readTree(input.getBody());
-            String propertyId = rootNode.get("property_id").asText();
-            Matcher matcher = pattern.matcher(propertyId);
-            boolean valid = matcher.matches();
-            if (!valid) {
+            JsonNode rootNode = Json.mapper().readTree(input.getBody());
+            PropertyId propertyId = PropertyId.parse(rootNode.get("property_id").asText());
+            if (propertyId == null) {
                 APIGatewayProxyResponseEvent errorResponse = response
                         .withBody("Input invalid; must conform to regular expression: " + EXPRESSION)
                         .withStatusCode(500);
                 return errorResponse;
             }
-            String[] splitString = propertyId.split("/");
-            String country = splitString[0];
-            String city = splitString[1];
-            String street = splitString[2];
-            String number = splitString[3];
-            String strPartionKey = ("property#" + country + "#" + city).replace(' ', '-').toLowerCase();
-            String strSortKey = (street + "#" + number).replace(' ', '-').toLowerCase();
             try {
-                List<Property> properties = queryTable(strPartionKey, strSortKey);
-                if (properties.size() <= 0) {
+                Property property = getProperty(propertyId.pk(), propertyId.sk());
+                if (property == null) {
                     APIGatewayProxyResponseEvent errorResponse = response
                             .withBody("No property found in database with the requested property id")
                             .withStatusCode(500);
                     return errorResponse;
                 }
-                Property property = properties.get(0);
                 if (noActionSet.contains(property.getStatus())) {
                     return response
                             .withStatusCode(200)
@@ -131,29 +117,19 @@ public class RequestApprovalFunction {
 
     }
 
-    public List<Property> queryTable(String partitionkey, String sortKey) throws Exception {
+    /**
+     * Reads the property with a point read of the attributes the approval needs.
+     *
+     * @return the property, null when there is none with this key
+     */
+    public Property getProperty(String partitionkey, String sortKey) throws Exception {
 
         try {
             if (partitionkey == null || sortKey == null) {
                 throw new Exception("Invalid Input");
             }
-            List<Property> result = new ArrayList<Property>();
-            SdkPublisher<Property> properties = null;
-
-            Key key = Key.builder().partitionValue(partitionkey).sortValue(sortKey).build();
-
-            QueryConditional queryConditional = QueryConditional.sortBeginsWith(key);
-            QueryEnhancedRequest request = QueryEnhancedRequest.builder().queryConditional(queryConditional)
-                    .build();
-            properties = propertyTable.query(request).items();
-
-            CompletableFuture<Void> future = properties.subscribe(res -> {
-                // Add response to the list
-                result.add(res);
-            });
-            future.get();
-
-            return result;
+            return PropertyReads.get(dynamodbClient, propertyTable, partitionkey, sortKey, APPROVAL_ATTRIBUTES)
+                    .get();
 
         } catch (DynamoDbException | InterruptedException | ExecutionException e) {
             throw new Exception(e.getMessage());
@@ -161,9 +137,36 @@ public class RequestApprovalFunction {
     }
 
 
-    public String sendEvent(Property property)
-            throws JsonProcessingException {
+    /**
+     * Validates a dummy request body and builds its approval event, without
+     * reading the table or publishing anything.
+     */
+    private void prime() {
+        try {
+            String propertyId = Json.mapper().readTree("{\"property_id\": \"" + PRIMING_PROPERTY_ID + "\"}")
+                    .get("property_id").asText();
+            PropertyId.parse(propertyId);
+
+            Property property = new Property();
+            property.setCountry("priming");
+            property.setCity("priming");
+            property.setStreet("priming");
+            property.setPropertyNumber("0");
+            propertyTable.tableSchema().mapToItem(propertyTable.tableSchema().itemToMap(property, true));
+            Json.write(toEvent(property));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void reconnect() {
+        propertyTable.getItem(Key.builder()
+                .partitionValue("property#priming#priming")
+                .sortValue("priming#0")
+                .build()).join();
+    }
 
+    RequestApproval toEvent(Property property) {
         RequestApproval event = new RequestApproval();
         event.setPropertyId(property.getId());
         Address address = new Address();
@@ -171,17 +174,27 @@ public class RequestApprovalFunction {
         address.setCountry(property.getCountry());
         address.setNumber(property.getPropertyNumber());
         event.setAddress(address);
+        return event;
+    }
 
-        String event_string = objectMapper.writeValueAsString(event);
-
-        List<PutEventsRequestEntry> requestEntries = new ArrayList<PutEventsRequestEntry>();
-
-        requestEntries.add(PutEventsRequestEntry.builder()
+    PutEventsRequestEntry toEntry(Property property) throws JsonProcessingException {
+        return PutEventsRequestEntry.builder()
                 .eventBusName(EVENT_BUS)
                 .source("Unicorn.Web")
                 .resources(property.getId())
                 .detailType("PublicationApprovalRequested")
-                .detail(event_string).build());
+                .detail(Json.write(toEvent(property))).build();
+    }
+
+    public String sendEvent(Property property)
+            throws JsonProcessingException {
+
+        PutEventsRequestEntry entry = toEntry(property);
+        String event_string = entry.detail();
+
+        List<PutEventsRequestEntry> requestEntries = new ArrayList<PutEventsRequestEntry>();
+
+        requestEntries.add(entry);
 
         PutEventsRequest eventsRequest = PutEventsRequest.builder().entries(requestEntries).build();
 
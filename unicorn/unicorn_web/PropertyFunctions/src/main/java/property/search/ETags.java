@@ -0,0 +1,99 @@
+package property.search;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Strong entity tags of search responses: a truncated SHA-256 of the response
+ * body. The body may be hashed in pieces as it is written, the tag only
+ * depends on the characters, not on how they were split.
+ */
+final class ETags {
+
+    static final String ETAG_HEADER = "ETag";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    private ETags() {
+    }
+
+    static String of(CharSequence body) {
+        Hasher hasher = new Hasher();
+        hasher.update(body);
+        return hasher.etag();
+    }
+
+    /**
+     * @return the If-None-Match header of the request, whatever its case, or null
+     */
+    static String ifNoneMatch(Map<String, String> headers) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (IF_NONE_MATCH_HEADER.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Weak comparison, as required for If-None-Match.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || opaque(candidate).equals(opaque(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * Incremental hash of a body, fed with the characters as UTF-16.
+     */
+    static final class Hasher {
+
+        private final MessageDigest digest;
+        private final byte[] buffer = new byte[1024];
+
+        Hasher() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void update(CharSequence chars) {
+            int length = chars.length();
+            int filled = 0;
+            for (int i = 0; i < length; i++) {
+                char c = chars.charAt(i);
+                buffer[filled++] = (byte) (c >> 8);
+                buffer[filled++] = (byte) c;
+                if (filled == buffer.length) {
+                    digest.update(buffer, 0, filled);
+                    filled = 0;
+                }
+            }
+            digest.update(buffer, 0, filled);
+        }
+
+        String etag() {
+            return '"' + Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(Arrays.copyOf(digest.digest(), 16)) + '"';
+        }
+    }
+}
@@ -4,28 +4,33 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import property.dao.PartitionVersions;
 import property.dao.Property;
+import property.dao.PropertyReads;
+import property.helper.Clients;
+import property.helper.Priming;
 import software.amazon.awssdk.core.async.SdkPublisher;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
-import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
@@ -38,23 +43,42 @@ public class PropertySearchFunction
         implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
 
     private static final Logger logger = LogManager.getLogger(PropertySearchFunction.class);
+    // FILTER queries the table and drops unapproved items, APPROVED_INDEX reads the sparse index only.
+    // Switch once the approved index backfill has run.
+    private static final String SEARCH_MODE = Optional.ofNullable(System.getenv("SEARCH_MODE"))
+            .orElse("FILTER").toUpperCase();
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String INPUT_INVALID = "{ \"message\": \"ErrorInRequest\",  \"requestdetails\": \"Input Invalid\" }";
+    static final String CANNOT_PROCESS =
+            "{ \"message\": \"ErrorInRequest\",  \"requestdetails\": \"Cannot Process Request\" }";
+    private static final int DEFAULT_PAGE_SIZE = Integer.parseInt(
+            Optional.ofNullable(System.getenv("SEARCH_DEFAULT_PAGE_SIZE")).orElse("25"));
+    private static final int MAX_PAGE_SIZE = Integer.parseInt(
+            Optional.ofNullable(System.getenv("SEARCH_MAX_PAGE_SIZE")).orElse("100"));
+    private static final Expression APPROVED_FILTER = Expression.builder()
+            .expressionNames(Map.of("#property_status", "status"))
+            .expression("#property_status = :value")
+            .expressionValues(Map.of(":value", AttributeValue.builder().s(Property.APPROVED).build()))
+            .build();
+    private static final String PRIMING_PK = "property#priming#priming";
+    private static final String PRIMING_SK = "priming#0";
 
     String TABLE_NAME = System.getenv("DYNAMODB_TABLE");
 
-    DynamoDbAsyncClient dynamodbClient = DynamoDbAsyncClient.builder()
-            .httpClientBuilder(NettyNioAsyncHttpClient.builder())
-            .build();
+    DynamoDbAsyncClient dynamodbClient = Clients.dynamoDb();
 
-    DynamoDbEnhancedAsyncClient enhancedClient = DynamoDbEnhancedAsyncClient.builder()
-            .dynamoDbClient(dynamodbClient)
-            .build();
+    DynamoDbEnhancedAsyncClient enhancedClient = Clients.enhancedDynamoDb();
 
     DynamoDbAsyncTable<Property> propertyTable = enhancedClient.table(TABLE_NAME,
             TableSchema.fromBean(Property.class));
 
     final String EVENT_BUS = System.getenv("EVENT_BUS");
 
-    ObjectMapper objectMapper = new ObjectMapper();
+    SearchCache cache = new SearchCache(
+            partitionKey -> PartitionVersions.read(dynamodbClient, TABLE_NAME, partitionKey).join());
+
+    private final Priming priming = Priming.register(
+            PropertySearchFunction.class.getSimpleName(), this::prime, this::reconnect);
 
     public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input, final Context context) {
 
@@ -63,127 +87,327 @@ public class PropertySearchFunction
         headers.put("X-Custom-Header", "application/json");
         APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent()
                 .withHeaders(headers);
-        String method = input.getHttpMethod();
-        if (!method.equalsIgnoreCase("get")) {
+
+        SearchQuery query;
+        try {
+            query = searchQuery(input);
+        } catch (IllegalArgumentException e) {
             return response
                     .withStatusCode(400)
-                    .withBody("{ \"message\": \"ErrorInRequest\",  \"requestdetails\": \"Input Invalid\" }");
+                    .withBody(INPUT_INVALID);
+        }
+
+        String responseString;
+        try {
+            SearchPage page = page(query);
+            String etag = page.etag();
+            headers.put(ETags.ETAG_HEADER, etag);
+            if (page.lastEvaluatedKey != null) {
+                headers.put(NEXT_CURSOR_HEADER, SearchCursor.encode(page.lastEvaluatedKey));
+            }
+            if (ETags.matches(ETags.ifNoneMatch(input.getHeaders()), etag)) {
+                return response.withStatusCode(304);
+            }
+            responseString = page.body();
+        } catch (Exception e) {
+            return response
+                    .withStatusCode(500)
+                    .withBody(CANNOT_PROCESS);
+        }
+
+        return response
+                .withStatusCode(200)
+                .withBody(responseString);
+    }
+
+    /**
+     * Reads the keys, page size and cursor of a search from the API request.
+     *
+     * @throws IllegalArgumentException when the request is not a valid search
+     */
+    static SearchQuery searchQuery(APIGatewayProxyRequestEvent input) {
+        String method = input.getHttpMethod();
+        if (!method.equalsIgnoreCase("get")) {
+            throw new IllegalArgumentException("Unsupported method " + method);
         }
         String requestPath = input.getResource();
-        String responseString = null;
         String strPartitionKey = ("property#" + input.getPathParameters().get("country") + "#"
                 + input.getPathParameters().get("city")).replace(' ', '-').toLowerCase();
 
         String strSortKey = null;
+        boolean exact = false;
         switch (requestPath) {
             case "/search/{country}/{city}":
                 // code to call
                 logger.info("path is " + requestPath);
-
-                try {
-                    List<Property> result = queryTable(strPartitionKey, null);
-                    responseString = objectMapper.writeValueAsString(result);
-                } catch (Exception e) {
-                    return response
-                            .withStatusCode(500)
-                            .withBody(
-                                    "{ \"message\": \"ErrorInRequest\",  \"requestdetails\": \"Cannot Process Request\" }");
-                }
                 break;
             case "/search/{country}/{city}/{street}":
                 // code to call
                 logger.info("path is " + requestPath);
                 strSortKey = input.getPathParameters().get("street");
                 strSortKey = strSortKey.replace(' ', '-').toLowerCase();
-
-                try {
-                    List<Property> result = queryTable(strPartitionKey, strSortKey);
-                    responseString = objectMapper.writeValueAsString(result);
-                } catch (Exception e) {
-                    return response
-                            .withStatusCode(500)
-                            .withBody(
-                                    "{ \"message\": \"ErrorInRequest\",  \"requestdetails\": \"Cannot Process Request\" }");
-                }
                 break;
             case "/properties/{country}/{city}/{street}/{number}":
                 logger.info("path is " + requestPath);
                 strSortKey = input.getPathParameters().get("street") + "#" + input.getPathParameters().get("number");
                 strSortKey = strSortKey.replace(' ', '-').toLowerCase();
-
-                try {
-                    List<Property> result = queryTable(strPartitionKey, strSortKey);
-                    responseString = objectMapper.writeValueAsString(result);
-                } catch (Exception e) {
-                    return response
-                            .withStatusCode(500)
-                            .withBody(
-                                    "{ \"message\": \"ErrorInRequest\",  \"requestdetails\": \"Cannot Process Request\" }");
-                }
+                exact = true;
                 break;
             default:
-                return response
-                        .withStatusCode(400)
-                        .withBody("{ \"message\": \"ErrorInRequest\",  \"requestdetails\": \"Input Invalid\" }");
+                throw new IllegalArgumentException("Unsupported path " + requestPath);
+        }
 
+        Map<String, String> query = Optional.ofNullable(input.getQueryStringParameters()).orElse(Map.of());
+        int limit = pageSize(query.get("limit"));
+        Map<String, AttributeValue> startKey = query.get("cursor") == null
+                ? null
+                : SearchCursor.decode(query.get("cursor"));
+        if (startKey != null
+                && (startKey.get("PK") == null || !strPartitionKey.equals(startKey.get("PK").s()))) {
+            throw new IllegalArgumentException("Cursor belongs to another search");
         }
+        SearchProjection projection = SearchProjection.parse(query.get("view"), query.get("fields"));
+        return new SearchQuery(strPartitionKey, strSortKey, exact, limit, startKey, projection);
+    }
 
-        return response
-                .withStatusCode(200)
-                .withBody(responseString);
+    /**
+     * Reads a page of results through the result cache.
+     */
+    SearchPage page(SearchQuery query) throws Exception {
+        if (!cache.enabled()) {
+            return load(query);
+        }
+        // read the stamp before the query, so a concurrent change leaves the page stale
+        long version = cache.version(query.partitionKey);
+        SearchPage page = cache.get(query, version);
+        if (page == null) {
+            page = load(query);
+            cache.put(query, version, page);
+        }
+        return page;
+    }
+
+    private SearchPage load(SearchQuery query) throws Exception {
+        List<Property> items = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        if (query.exact) {
+            Property property = getProperty(query.partitionKey, query.sortKey, query.projection.attributes);
+            if (property != null) {
+                items.add(property);
+            }
+        } else {
+            lastEvaluatedKey = queryTable(query.partitionKey, query.sortKey, query.limit, query.startKey,
+                    query.projection.attributes, items::add);
+        }
+        return new SearchPage(items, lastEvaluatedKey, query.projection);
+    }
+
+    /**
+     * Runs a search, handing each property to {@code sink}. Without the result
+     * cache the properties are handed over as their DynamoDB pages arrive.
+     *
+     * @return the key to continue after, null on the last page
+     */
+    Map<String, AttributeValue> search(SearchQuery query, Consumer<Property> sink) throws Exception {
+        if (!cache.enabled() && !query.exact) {
+            return queryTable(query.partitionKey, query.sortKey, query.limit, query.startKey,
+                    query.projection.attributes, sink);
+        }
+        SearchPage page = page(query);
+        page.items.forEach(sink);
+        return page.lastEvaluatedKey;
     }
 
-    public List<Property> queryTable(String partitionkey, String sortKey) throws Exception {
+    private static int pageSize(String limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        int size = Integer.parseInt(limit);
+        if (size < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
 
+    /**
+     * Maps a dummy property through the bean table schema and the result writers,
+     * the expensive part of a search besides the query itself.
+     */
+    private void prime() {
+        Property property = new Property();
+        property.setCountry("priming");
+        property.setCity("priming");
+        property.setStreet("priming");
+        property.setPropertyNumber("0");
+        property.setStatus("APPROVED");
+        propertyTable.tableSchema().mapToItem(propertyTable.tableSchema().itemToMap(property, true));
         try {
-            if (partitionkey == null) {
-                throw new Exception("Invalid Input");
+            SearchProjection.FULL.write(List.of(property));
+            SearchProjection.SUMMARY.write(List.of(property));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void reconnect() {
+        propertyTable.getItem(Key.builder().partitionValue(PRIMING_PK).sortValue(PRIMING_SK).build()).join();
+    }
+
+    /**
+     * Reads a single property by its full key. Only an approved property is
+     * returned, as with a query.
+     *
+     * @param attributes the attributes to read, all of them when empty
+     * @return the property, null when there is no approved one with this key
+     */
+    public Property getProperty(String partitionkey, String sortKey, List<String> attributes) throws Exception {
+        try {
+            boolean readStatus = attributes.isEmpty() || attributes.contains("status");
+            List<String> read = attributes;
+            if (!readStatus) {
+                read = new ArrayList<>(attributes);
+                read.add("status");
             }
-            List<Property> result = new ArrayList<Property>();
-            SdkPublisher<Property> properties = null;
-
-            AttributeValue attributeValue = AttributeValue.builder()
-                    .s("APPROVED")
-                    .build();
-            Map<String, AttributeValue> expressionValues = new HashMap<>();
-            expressionValues.put(":value", attributeValue);
-
-            Map<String, String> expressionNames = new HashMap<>();
-            expressionNames.put("#property_status", "status");
-
-            Expression expression = Expression.builder()
-                    .expressionNames(expressionNames)
-                    .expression("#property_status = :value")
-                    .expressionValues(expressionValues)
-                    .build();
-
-            if (sortKey != null) {
-                Key key = Key.builder().partitionValue(partitionkey).sortValue(sortKey).build();
-
-                QueryConditional queryConditional = QueryConditional.sortBeginsWith(key);
-                QueryEnhancedRequest request = QueryEnhancedRequest.builder().queryConditional(queryConditional)
-                        .filterExpression(expression).build();
-                properties = propertyTable.query(request).items();
-
-            } else {
-                Key key = Key.builder().partitionValue(partitionkey).build();
-                QueryConditional queryConditional = QueryConditional.keyEqualTo(key);
-                QueryEnhancedRequest request = QueryEnhancedRequest.builder().queryConditional(queryConditional)
-                        .filterExpression(expression).build();
-                properties = propertyTable.query(request).items();
+            Property property = PropertyReads.get(dynamodbClient, propertyTable, partitionkey, sortKey, read).get();
+            if (property == null || !Property.APPROVED.equals(property.getStatus())) {
+                return null;
             }
+            if (!readStatus) {
+                property.setStatus(null);
+            }
+            return property;
 
-            CompletableFuture<Void> future = properties.subscribe(res -> {
-                // Add response to the list
-                result.add(res);
-            });
-            future.get();
+        } catch (DynamoDbException | InterruptedException | ExecutionException e) {
+            throw new Exception(e.getMessage());
+        }
+    }
 
-            return result;
+    /**
+     * Reads one page of approved properties, starting after {@code startKey}, and
+     * hands each property to {@code sink} as soon as its DynamoDB page arrives.
+     * Pages are requested with the number of items still missing, so DynamoDB
+     * stops reading once the page is full and its last evaluated key is where
+     * the next page starts. A filtered query may need several requests to fill
+     * a page.
+     *
+     * @param attributes the attributes to read, all of them when empty
+     * @return the key to continue after, null on the last page
+     */
+    public Map<String, AttributeValue> queryTable(String partitionkey, String sortKey, int limit,
+                                                  Map<String, AttributeValue> startKey, List<String> attributes,
+                                                  Consumer<Property> sink) throws Exception {
+
+        try {
+            if (partitionkey == null) {
+                throw new Exception("Invalid Input");
+            }
+            boolean useIndex = "APPROVED_INDEX".equals(SEARCH_MODE);
+
+            QueryConditional queryConditional = sortKey != null
+                    ? QueryConditional.sortBeginsWith(Key.builder().partitionValue(partitionkey).sortValue(sortKey).build())
+                    : QueryConditional.keyEqualTo(Key.builder().partitionValue(partitionkey).build());
+
+            int count = 0;
+            Map<String, AttributeValue> lastEvaluatedKey = startKey;
+            do {
+                QueryEnhancedRequest.Builder request = QueryEnhancedRequest.builder()
+                        .queryConditional(queryConditional)
+                        .exclusiveStartKey(lastEvaluatedKey)
+                        .limit(limit - count);
+                if (!attributes.isEmpty()) {
+                    request.attributesToProject(attributes);
+                }
+                Page<Property> page;
+                if (useIndex) {
+                    page = firstPage(propertyTable.index(Property.APPROVED_INDEX).query(request.build()));
+                } else {
+                    page = firstPage(propertyTable.query(request.filterExpression(APPROVED_FILTER).build()));
+                }
+                if (page == null) {
+                    lastEvaluatedKey = null;
+                    break;
+                }
+                for (Property property : page.items()) {
+                    sink.accept(property);
+                }
+                count += page.items().size();
+                lastEvaluatedKey = page.lastEvaluatedKey();
+            } while (count < limit && lastEvaluatedKey != null);
+
+            return lastEvaluatedKey;
 
         } catch (DynamoDbException | InterruptedException | ExecutionException e) {
             throw new Exception(e.getMessage());
         }
     }
 
+    private static Page<Property> firstPage(SdkPublisher<Page<Property>> pages)
+            throws InterruptedException, ExecutionException {
+        List<Page<Property>> first = new ArrayList<>(1);
+        pages.limit(1).subscribe(first::add).get();
+        return first.isEmpty() ? null : first.get(0);
+    }
+
+    /**
+     * The parameters of a search request.
+     */
+    static final class SearchQuery {
+
+        final String partitionKey;
+        final String sortKey;
+        // the sort key is a full key rather than a prefix
+        final boolean exact;
+        final int limit;
+        final Map<String, AttributeValue> startKey;
+        final SearchProjection projection;
+
+        SearchQuery(String partitionKey, String sortKey, boolean exact, int limit,
+                    Map<String, AttributeValue> startKey, SearchProjection projection) {
+            this.partitionKey = partitionKey;
+            this.sortKey = sortKey;
+            this.exact = exact;
+            this.limit = limit;
+            this.startKey = startKey;
+            this.projection = projection;
+        }
+    }
+
+    /**
+     * A page of search results; {@code lastEvaluatedKey} is null on the last page.
+     */
+    public static final class SearchPage {
+
+        final List<Property> items;
+        final Map<String, AttributeValue> lastEvaluatedKey;
+        private final SearchProjection projection;
+
+        private String body;
+        private String etag;
+
+        SearchPage(List<Property> items, Map<String, AttributeValue> lastEvaluatedKey,
+                   SearchProjection projection) {
+            this.items = items;
+            this.lastEvaluatedKey = lastEvaluatedKey;
+            this.projection = projection;
+        }
+
+        /**
+         * The serialized items, computed once, so a cached page is not serialized
+         * again for every response.
+         */
+        synchronized String body() throws JsonProcessingException {
+            if (body == null) {
+                body = projection.write(items);
+            }
+            return body;
+        }
+
+        synchronized String etag() throws JsonProcessingException {
+            if (etag == null) {
+                etag = ETags.of(body());
+            }
+            return etag;
+        }
+    }
+
 }
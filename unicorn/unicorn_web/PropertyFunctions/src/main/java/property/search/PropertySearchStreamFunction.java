@@ -0,0 +1,224 @@
+package property.search;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import property.dao.Property;
+import property.helper.Json;
+import property.search.PropertySearchFunction.SearchQuery;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Streaming variant of {@link PropertySearchFunction}, opt-in and meant for a
+ * SearchFunction deployed with the result cache disabled
+ * ({@code SEARCH_CACHE_MAX_ENTRIES} "0"). The template deploys
+ * {@link PropertySearchFunction}.
+ *
+ * The API Gateway proxy response is written straight to the output stream.
+ * Without the cache, each property is serialized into the (escaped) body as
+ * soon as its DynamoDB page arrives, instead of first collecting a list,
+ * rendering it to a string and copying that into a response event, which saves
+ * those intermediate copies of a page. The Java runtime still returns the
+ * response as a whole, and the REST API proxy integration waits for it, so the
+ * client gets its first byte no sooner. With the cache enabled, the page is
+ * collected and cached first and only the envelope is streamed, which gains
+ * nothing over the buffered handler.
+ *
+ * The body goes out before the headers, because the next page cursor is only
+ * known once the last page has been read; the same goes for the ETag, which is
+ * hashed while the body is written. Requests with If-None-Match are answered
+ * from a buffered page instead, since a 304 has to be decided up front. A query
+ * that fails after the first property has been written fails the invocation,
+ * which API Gateway answers with a 502, instead of returning a 500.
+ */
+public class PropertySearchStreamFunction implements RequestStreamHandler {
+
+    private static final Logger logger = LogManager.getLogger(PropertySearchStreamFunction.class);
+    private static final ObjectReader REQUEST_READER = Json.reader(APIGatewayProxyRequestEvent.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    PropertySearchFunction search = new PropertySearchFunction();
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        APIGatewayProxyRequestEvent request = REQUEST_READER.readValue(input);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+
+        SearchQuery query;
+        try {
+            query = PropertySearchFunction.searchQuery(request);
+        } catch (IllegalArgumentException e) {
+            writeResponse(writer, 400, headers(), PropertySearchFunction.INPUT_INVALID);
+            return;
+        }
+
+        String ifNoneMatch = ETags.ifNoneMatch(request.getHeaders());
+        if (ifNoneMatch != null) {
+            // the tag must be known before the status line, so conditional requests are buffered
+            writeConditionalResponse(writer, query, ifNoneMatch);
+            return;
+        }
+
+        Map<String, String> headers = headers();
+        ETags.Hasher hasher = new ETags.Hasher();
+        Map<String, AttributeValue> lastEvaluatedKey;
+        try (JsonGenerator body = Json.mapper().getFactory().createGenerator(new EscapingWriter(writer, hasher))) {
+            body.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            StreamedBody sink = new StreamedBody(writer, body, query.projection);
+            try {
+                lastEvaluatedKey = search.search(query, sink);
+            } catch (Exception e) {
+                if (sink.started) {
+                    throw new IOException("Search failed after the response was started", e);
+                }
+                logger.error("Search failed", e);
+                writeResponse(writer, 500, headers, PropertySearchFunction.CANNOT_PROCESS);
+                return;
+            }
+            sink.start();
+            body.writeEndArray();
+            body.flush();
+        }
+        headers.put(ETags.ETAG_HEADER, hasher.etag());
+        if (lastEvaluatedKey != null) {
+            headers.put(PropertySearchFunction.NEXT_CURSOR_HEADER, SearchCursor.encode(lastEvaluatedKey));
+        }
+        writer.write("\",\"headers\":");
+        writer.write(Json.write(headers));
+        writer.write('}');
+        writer.flush();
+    }
+
+    private void writeConditionalResponse(Writer writer, SearchQuery query, String ifNoneMatch) throws IOException {
+        Map<String, String> headers = headers();
+        PropertySearchFunction.SearchPage page;
+        String etag;
+        try {
+            page = search.page(query);
+            etag = page.etag();
+        } catch (Exception e) {
+            logger.error("Search failed", e);
+            writeResponse(writer, 500, headers, PropertySearchFunction.CANNOT_PROCESS);
+            return;
+        }
+        headers.put(ETags.ETAG_HEADER, etag);
+        if (page.lastEvaluatedKey != null) {
+            headers.put(PropertySearchFunction.NEXT_CURSOR_HEADER, SearchCursor.encode(page.lastEvaluatedKey));
+        }
+        if (ETags.matches(ifNoneMatch, etag)) {
+            writeResponse(writer, 304, headers, null);
+        } else {
+            writeResponse(writer, 200, headers, page.body());
+        }
+    }
+
+    private static Map<String, String> headers() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("X-Custom-Header", "application/json");
+        return headers;
+    }
+
+    private static void writeResponse(Writer writer, int statusCode, Map<String, String> headers, String body)
+            throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        response.put("statusCode", statusCode);
+        response.put("headers", headers);
+        if (body != null) {
+            response.put("body", body);
+        }
+        writer.write(Json.write(response));
+        writer.flush();
+    }
+
+    /**
+     * Opens the response envelope and the result array with the first property,
+     * so an error before that can still become a 500 response.
+     */
+    private static final class StreamedBody implements Consumer<Property> {
+
+        private final Writer writer;
+        private final JsonGenerator body;
+        private final SearchProjection projection;
+        private boolean started;
+
+        StreamedBody(Writer writer, JsonGenerator body, SearchProjection projection) {
+            this.writer = writer;
+            this.body = body;
+            this.projection = projection;
+        }
+
+        void start() throws IOException {
+            if (!started) {
+                started = true;
+                writer.write("{\"statusCode\":200,\"body\":\"");
+                body.writeStartArray();
+            }
+        }
+
+        @Override
+        public void accept(Property property) {
+            try {
+                start();
+                projection.write(body, property);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Escapes everything written to it as the content of a JSON string, so the
+     * result array can be generated directly into the string valued body, and
+     * hashes the unescaped body for its ETag.
+     */
+    private static final class EscapingWriter extends Writer {
+
+        private static final JsonStringEncoder ENCODER = JsonStringEncoder.getInstance();
+
+        private final Writer target;
+        private final ETags.Hasher hasher;
+
+        EscapingWriter(Writer target, ETags.Hasher hasher) {
+            this.target = target;
+            this.hasher = hasher;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            String chars = new String(buffer, offset, length);
+            hasher.update(chars);
+            target.write(ENCODER.quoteAsString(chars));
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
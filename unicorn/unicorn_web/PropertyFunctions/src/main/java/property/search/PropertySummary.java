@@ -0,0 +1,66 @@
+package property.search;
+
+import java.util.List;
+
+import property.dao.Property;
+
+/**
+ * What a listing shows of a property: its address, price and first image.
+ */
+public class PropertySummary {
+
+    /**
+     * The attributes a summary is built from.
+     */
+    static final List<String> ATTRIBUTES = List.of("country", "city", "street", "number", "listprice", "currency",
+            "images");
+
+    String country;
+    String city;
+    String street;
+    String propertyNumber;
+    Float listprice;
+    String currency;
+    String thumbnail;
+
+    static PropertySummary of(Property property) {
+        PropertySummary summary = new PropertySummary();
+        summary.country = property.getCountry();
+        summary.city = property.getCity();
+        summary.street = property.getStreet();
+        summary.propertyNumber = property.getPropertyNumber();
+        summary.listprice = property.getListprice();
+        summary.currency = property.getCurrency();
+        List<String> images = property.getImages();
+        summary.thumbnail = images == null || images.isEmpty() ? null : images.get(0);
+        return summary;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public String getStreet() {
+        return street;
+    }
+
+    public String getPropertyNumber() {
+        return propertyNumber;
+    }
+
+    public Float getListprice() {
+        return listprice;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public String getThumbnail() {
+        return thumbnail;
+    }
+}
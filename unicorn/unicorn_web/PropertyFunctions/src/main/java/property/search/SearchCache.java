@@ -0,0 +1,153 @@
+package property.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import property.search.PropertySearchFunction.SearchPage;
+import property.search.PropertySearchFunction.SearchQuery;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.cloudwatchlogs.emf.logger.MetricsLogger;
+import software.amazon.cloudwatchlogs.emf.model.Unit;
+
+/**
+ * Per container cache of search pages, keyed by partition, sort key (prefix),
+ * page size, projection and cursor.
+ *
+ * A page is served from the cache while it is younger than
+ * {@code SEARCH_CACHE_TTL_SECONDS} and was read at the current version stamp of
+ * its partition (see {@link property.dao.PartitionVersions}). The stamp itself
+ * is re-read at most every {@code SEARCH_CACHE_VERSION_CHECK_SECONDS}, so within
+ * that window repeated searches do not call DynamoDB at all and a status change
+ * becomes visible after it at the latest. {@code SEARCH_CACHE_MAX_ENTRIES}
+ * bounds the number of pages, the least recently used one is evicted first;
+ * 0 disables the cache.
+ */
+final class SearchCache {
+
+    private static final int MAX_ENTRIES = Integer.parseInt(
+            Optional.ofNullable(System.getenv("SEARCH_CACHE_MAX_ENTRIES")).orElse("500"));
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(Long.parseLong(
+            Optional.ofNullable(System.getenv("SEARCH_CACHE_TTL_SECONDS")).orElse("300")));
+    private static final long VERSION_CHECK_NANOS = TimeUnit.SECONDS.toNanos(Long.parseLong(
+            Optional.ofNullable(System.getenv("SEARCH_CACHE_VERSION_CHECK_SECONDS")).orElse("5")));
+    private static final String NAMESPACE = System.getenv("SERVICE_NAMESPACE");
+
+    private final ToLongFunction<String> versionReader;
+    private final int maxEntries;
+    private final Map<String, Entry> pages;
+    private final Map<String, Stamp> versions;
+
+    /**
+     * @param versionReader reads the current version stamp of a partition
+     */
+    SearchCache(ToLongFunction<String> versionReader) {
+        this(versionReader, MAX_ENTRIES);
+    }
+
+    SearchCache(ToLongFunction<String> versionReader, int maxEntries) {
+        this.versionReader = versionReader;
+        this.maxEntries = maxEntries;
+        this.pages = lru(maxEntries);
+        // partitions come from the request path, so their stamps are bounded like the pages
+        this.versions = lru(maxEntries);
+    }
+
+    boolean enabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * @return the version stamp to pass to {@link #get} and {@link #put}
+     */
+    long version(String partitionKey) {
+        long now = System.nanoTime();
+        synchronized (versions) {
+            Stamp stamp = versions.get(partitionKey);
+            if (stamp != null && now - stamp.checkedAt < VERSION_CHECK_NANOS) {
+                return stamp.version;
+            }
+        }
+        long version = versionReader.applyAsLong(partitionKey);
+        synchronized (versions) {
+            versions.put(partitionKey, new Stamp(version, now));
+        }
+        return version;
+    }
+
+    /**
+     * @return the cached page, null on a miss
+     */
+    SearchPage get(SearchQuery query, long version) {
+        Entry entry;
+        synchronized (pages) {
+            entry = pages.get(key(query));
+        }
+        boolean hit = entry != null && entry.version == version
+                && System.nanoTime() - entry.cachedAt < TTL_NANOS;
+        record(hit);
+        return hit ? entry.page : null;
+    }
+
+    void put(SearchQuery query, long version, SearchPage page) {
+        synchronized (pages) {
+            pages.put(key(query), new Entry(page, version, System.nanoTime()));
+        }
+    }
+
+    private static <V> Map<String, V> lru(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private static String key(SearchQuery query) {
+        StringBuilder key = new StringBuilder(query.partitionKey)
+                .append(query.exact ? '=' : '|').append(query.sortKey)
+                .append('|').append(query.limit)
+                .append('|').append(query.projection.name);
+        if (query.startKey != null) {
+            AttributeValue sk = query.startKey.get("SK");
+            key.append('|').append(sk == null ? null : sk.s());
+        }
+        return key.toString();
+    }
+
+    private static void record(boolean hit) {
+        MetricsLogger metrics = new MetricsLogger();
+        if (NAMESPACE != null) {
+            metrics.setNamespace(NAMESPACE);
+        }
+        metrics.putMetric(hit ? "SearchCacheHit" : "SearchCacheMiss", 1, Unit.COUNT);
+        metrics.flush();
+    }
+
+    private static final class Entry {
+
+        final SearchPage page;
+        final long version;
+        final long cachedAt;
+
+        Entry(SearchPage page, long version, long cachedAt) {
+            this.page = page;
+            this.version = version;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    private static final class Stamp {
+
+        final long version;
+        final long checkedAt;
+
+        Stamp(long version, long checkedAt) {
+            this.version = version;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package property.search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import property.helper.Json;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Opaque page token for the search API: the last evaluated key of a query,
+ * as URL safe base64 of a flat JSON object. Every key attribute of the table
+ * and of its indexes is a string, so nothing else has to be encoded.
+ */
+final class SearchCursor {
+
+    private static final ObjectReader KEY_READER = Json.mapper().readerFor(new TypeReference<Map<String, String>>() {});
+
+    private SearchCursor() {
+    }
+
+    static String encode(Map<String, AttributeValue> lastEvaluatedKey) {
+        Map<String, String> key = new HashMap<>();
+        lastEvaluatedKey.forEach((name, value) -> key.put(name, value.s()));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    Json.mapper().writeValueAsBytes(key));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot encode search cursor", e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException when the token was not produced by {@link #encode}
+     */
+    static Map<String, AttributeValue> decode(String cursor) {
+        Map<String, String> key;
+        try {
+            key = KEY_READER.readValue(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        Map<String, AttributeValue> startKey = new HashMap<>();
+        key.forEach((name, value) -> startKey.put(name, AttributeValue.fromS(value)));
+        return startKey;
+    }
+}
@@ -0,0 +1,112 @@
+package property.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import property.dao.Property;
+import property.helper.Json;
+
+/**
+ * What a search returns of each property, selected with the query parameters
+ * {@code view=summary} or {@code fields=city,street,...}. Both read only the
+ * attributes they need from DynamoDB; the default is the full property.
+ */
+final class SearchProjection {
+
+    static final SearchProjection FULL = new SearchProjection("full", List.of(),
+            Json.writer(Property.class), Json.writer(listOf(Json.mapper(), Property.class)));
+    static final SearchProjection SUMMARY = new SearchProjection("summary", PropertySummary.ATTRIBUTES,
+            Json.writer(PropertySummary.class), Json.writer(listOf(Json.mapper(), PropertySummary.class)));
+
+    // JSON field name -> attribute name, for the fields parameter
+    private static final Map<String, String> FIELDS = new LinkedHashMap<>();
+    static {
+        FIELDS.put("country", "country");
+        FIELDS.put("city", "city");
+        FIELDS.put("street", "street");
+        FIELDS.put("propertyNumber", "number");
+        FIELDS.put("description", "description");
+        FIELDS.put("contract", "contract");
+        FIELDS.put("listprice", "listprice");
+        FIELDS.put("currency", "currency");
+        FIELDS.put("images", "images");
+        FIELDS.put("status", "status");
+    }
+    // fields that were not read are null, and left out of the response
+    private static final ObjectMapper FIELDS_MAPPER = Json.newObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private static final ObjectWriter FIELDS_ITEM_WRITER = FIELDS_MAPPER.writerFor(Property.class);
+    private static final ObjectWriter FIELDS_LIST_WRITER = FIELDS_MAPPER.writerFor(
+            listOf(FIELDS_MAPPER, Property.class));
+
+    final String name;
+    final List<String> attributes;
+    private final ObjectWriter itemWriter;
+    private final ObjectWriter listWriter;
+
+    private SearchProjection(String name, List<String> attributes, ObjectWriter itemWriter,
+                             ObjectWriter listWriter) {
+        this.name = name;
+        this.attributes = attributes;
+        this.itemWriter = itemWriter;
+        this.listWriter = listWriter;
+    }
+
+    /**
+     * @throws IllegalArgumentException on an unknown view or field
+     */
+    static SearchProjection parse(String view, String fields) {
+        if (fields != null) {
+            if (view != null) {
+                throw new IllegalArgumentException("Either view or fields");
+            }
+            TreeSet<String> names = new TreeSet<>();
+            List<String> attributes = new ArrayList<>();
+            for (String field : fields.split(",")) {
+                String attribute = FIELDS.get(field.trim());
+                if (attribute == null) {
+                    throw new IllegalArgumentException("Unknown field " + field);
+                }
+                if (names.add(field.trim())) {
+                    attributes.add(attribute);
+                }
+            }
+            return new SearchProjection("fields:" + String.join(",", names), List.copyOf(attributes),
+                    FIELDS_ITEM_WRITER, FIELDS_LIST_WRITER);
+        }
+        if (view == null || view.equals(FULL.name)) {
+            return FULL;
+        }
+        if (view.equals(SUMMARY.name)) {
+            return SUMMARY;
+        }
+        throw new IllegalArgumentException("Unknown view " + view);
+    }
+
+    void write(JsonGenerator generator, Property property) throws IOException {
+        itemWriter.writeValue(generator, this == SUMMARY ? PropertySummary.of(property) : property);
+    }
+
+    String write(List<Property> properties) throws JsonProcessingException {
+        List<Object> items = new ArrayList<>(properties.size());
+        for (Property property : properties) {
+            items.add(this == SUMMARY ? PropertySummary.of(property) : property);
+        }
+        return listWriter.writeValueAsString(items);
+    }
+
+    private static JavaType listOf(ObjectMapper mapper, Class<?> type) {
+        return mapper.getTypeFactory().constructCollectionType(List.class, type);
+    }
+}
@@ -2,16 +2,20 @@ package schema.unicorn_properties.publicationevaluationcompleted.marshaller;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.ObjectReader;
+import property.helper.Json;
 import schema.unicorn_properties.publicationevaluationcompleted.AWSEvent;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Marshaller {
 
   private static final ObjectMapper MAPPER = createObjectMapper();
+  private static final Map<Class<?>, ObjectReader> EVENT_READERS = new ConcurrentHashMap<>();
 
   public static <T> void marshal(OutputStream output, T value) throws IOException {
     MAPPER.writeValue(output, value);
@@ -22,13 +26,13 @@ public class Marshaller {
   }
 
   public static <T> AWSEvent<T> unmarshalEvent(InputStream input, Class<T> type) throws IOException {
-    final TypeFactory typeFactory = MAPPER.getTypeFactory();
-    return MAPPER.readValue(input, typeFactory.constructParametricType(AWSEvent.class, type));
+    ObjectReader reader = EVENT_READERS.computeIfAbsent(type, t ->
+            MAPPER.readerFor(MAPPER.getTypeFactory().constructParametricType(AWSEvent.class, t)));
+    return reader.readValue(input);
   }
 
   private static ObjectMapper createObjectMapper() {
-    return new ObjectMapper()
-            .findAndRegisterModules()
+    return Json.newObjectMapper()
             .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
   }
 }
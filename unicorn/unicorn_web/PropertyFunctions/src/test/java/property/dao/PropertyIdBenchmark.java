@@ -0,0 +1,104 @@
+package property.dao;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Compares reading the keys of a property id with a regular expression and
+ * {@code split}, as the handlers used to, with {@link PropertyId}, and the key
+ * getters of {@link Property} rebuilding the keys on every call with the cached
+ * ones. Run {@link #main} and compare the {@code gc.alloc.rate.norm} column
+ * (bytes allocated per operation).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PropertyIdBenchmark {
+
+    private static final String PROPERTY_ID = "usa/anytown/main-street/111";
+    private static final Pattern PATTERN = Pattern.compile("[a-z-]+\\/[a-z-]+\\/[a-z][a-z0-9-]*\\/[0-9-]+");
+
+    private Property property;
+
+    @Setup
+    public void setUp() {
+        property = new Property();
+        property.setCountry("USA");
+        property.setCity("Anytown");
+        property.setStreet("Main Street");
+        property.setPropertyNumber("111");
+    }
+
+    @Benchmark
+    public void parseWithRegex(Blackhole blackhole) {
+        if (!PATTERN.matcher(PROPERTY_ID).matches()) {
+            throw new IllegalStateException();
+        }
+        String[] splitString = PROPERTY_ID.split("/");
+        String country = splitString[0];
+        String city = splitString[1];
+        String street = splitString[2];
+        String number = splitString[3];
+        blackhole.consume(("property#" + country + "#" + city).replace(' ', '-').toLowerCase());
+        blackhole.consume((street + "#" + number).replace(' ', '-').toLowerCase());
+    }
+
+    @Benchmark
+    public void parseWithPropertyId(Blackhole blackhole) {
+        PropertyId id = PropertyId.parse(PROPERTY_ID);
+        blackhole.consume(id.pk());
+        blackhole.consume(id.sk());
+    }
+
+    /**
+     * The getters as the enhanced client and Jackson call them, several times
+     * per item, with the keys rebuilt on every call.
+     */
+    @Benchmark
+    public void keysRebuilt(Blackhole blackhole) {
+        for (int i = 0; i < 3; i++) {
+            String pk = ("PROPERTY#" + property.getCountry() + "#" + property.getCity())
+                    .replace(' ', '-').toLowerCase();
+            String sk = (property.getStreet() + "#" + property.getPropertyNumber())
+                    .replace(' ', '-').toLowerCase();
+            blackhole.consume(pk);
+            blackhole.consume(sk);
+            blackhole.consume((pk + '/' + sk).replace('#', '/'));
+        }
+    }
+
+    @Benchmark
+    public void keysCached(Blackhole blackhole) {
+        for (int i = 0; i < 3; i++) {
+            blackhole.consume(property.getPk());
+            blackhole.consume(property.getSk());
+            blackhole.consume(property.getId());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PropertyIdBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
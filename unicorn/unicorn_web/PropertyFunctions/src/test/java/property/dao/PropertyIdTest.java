@@ -0,0 +1,119 @@
+package property.dao;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyIdTest {
+
+    // the expression the approval API validated ids with before PropertyId
+    private static final Pattern EXPRESSION = Pattern.compile("[a-z-]+\\/[a-z-]+\\/[a-z][a-z0-9-]*\\/[0-9-]+");
+
+    private static final List<String> VALID = List.of(
+            "usa/anytown/main-street/111",
+            "usa/any-town/main-street/1-3",
+            "-/-/a/-",
+            "usa/anytown/m4in-street-2/0",
+            "u/a/s/1");
+
+    private static final List<String> INVALID = List.of(
+            "",
+            "/",
+            "usa/anytown/main-street",
+            "usa/anytown/main-street/",
+            "usa/anytown/main-street/111/",
+            "usa/anytown/main-street/111/2",
+            "/anytown/main-street/111",
+            "usa//main-street/111",
+            "usa/anytown//111",
+            "usa/anytown/1st-street/111",
+            "usa/anytown/-street/111",
+            "USA/anytown/main-street/111",
+            "usa/Anytown/main-street/111",
+            "usa/anytown/Main-street/111",
+            "usa/anytown/main street/111",
+            "usa/anytown/main-street/11a",
+            "us4/anytown/main-street/111",
+            "usa/anytown/main_street/111",
+            "usa/anyt\u00f6wn/main-street/111",
+            "usa\\anytown\\main-street\\111");
+
+    @Test
+    public void parseAcceptsWhatTheExpressionAccepts() {
+        for (String id : VALID) {
+            assertTrue(id, EXPRESSION.matcher(id).matches());
+            assertNotNull(id, PropertyId.parse(id));
+        }
+    }
+
+    @Test
+    public void parseRejectsWhatTheExpressionRejects() {
+        for (String id : INVALID) {
+            assertFalse(id, EXPRESSION.matcher(id).matches());
+            assertNull(id, PropertyId.parse(id));
+        }
+        assertNull(PropertyId.parse(null));
+    }
+
+    @Test
+    public void keysAreDerivedFromTheSegments() {
+        PropertyId id = PropertyId.parse("usa/anytown/main-street/111");
+
+        assertEquals("property#usa#anytown", id.pk());
+        assertEquals("main-street#111", id.sk());
+        assertEquals("111", id.number());
+        assertEquals("usa/anytown/main-street/111", id.id());
+    }
+
+    @Test
+    public void normalizeCanonicalizesIdsFromEvents() {
+        PropertyId id = PropertyId.normalize("USA/Any Town/Main Street/111");
+
+        assertEquals("usa/any-town/main-street/111", id.id());
+        assertEquals("property#usa#any-town", id.pk());
+        assertEquals("main-street#111", id.sk());
+        assertEquals(PropertyId.parse("usa/any-town/main-street/111"), id);
+    }
+
+    @Test
+    public void normalizeRejectsIdsWithoutFourSegments() {
+        for (String id : List.of("usa/anytown/main-street", "usa/anytown/main-street/111/2",
+                "usa//main-street/111", "usa/anytown/main-street/")) {
+            assertThrows(id, IllegalArgumentException.class, () -> PropertyId.normalize(id));
+        }
+    }
+
+    @Test
+    public void ofBuildsTheIdOfAnAddress() {
+        PropertyId id = PropertyId.of("USA", "Anytown", "Main Street", "111");
+
+        assertEquals(PropertyId.parse("usa/anytown/main-street/111"), id);
+        assertEquals("property#usa#anytown", id.pk());
+        assertEquals("main-street#111", id.sk());
+        assertEquals("property#null#null", PropertyId.of(null, null, "main-street", "1").pk());
+    }
+
+    @Test
+    public void propertyIdHasNoTablePrefix() {
+        Property property = new Property();
+        property.setCountry("USA");
+        property.setCity("Anytown");
+        property.setStreet("Main Street");
+        property.setPropertyNumber("111");
+
+        assertEquals("usa/anytown/main-street/111", property.getId());
+        assertEquals("property#usa#anytown", property.getPk());
+
+        property.setPropertyNumber("112");
+        assertEquals("usa/anytown/main-street/112", property.getId());
+        assertEquals("main-street#112", property.getSk());
+    }
+}
@@ -0,0 +1,98 @@
+package property.requestapproval;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent.SQSMessage;
+
+import property.dao.PropertyId;
+import property.requestapproval.PublicationApprovedBatchFunction.Latest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PublicationApprovedBatchFunctionTest {
+
+    private static final String EVENT = "{\"detail-type\": \"PublicationEvaluationCompleted\", "
+            + "\"source\": \"unicorn.properties\", %s\"detail\": "
+            + "{\"evaluation_result\": \"%s\", \"property_id\": \"%s\"}}";
+
+    private static final PropertyId PROPERTY = PropertyId.parse("usa/anytown/main-street/111");
+
+    private final List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+
+    @Test
+    public void latestEventWins() {
+        Map<PropertyId, Latest> latest = PublicationApprovedBatchFunction.collapse(List.of(
+                message("m1", "2024-01-01T10:00:00Z", "APPROVED", "usa/anytown/main-street/111"),
+                message("m2", "2024-01-01T09:00:00Z", "DECLINED", "usa/anytown/main-street/111"),
+                message("m3", "2024-01-01T08:00:00Z", "DECLINED", "usa/anytown/main-street/111")), failures);
+
+        assertTrue(failures.isEmpty());
+        assertEquals(1, latest.size());
+        assertEquals("m1", latest.get(PROPERTY).messageId);
+        assertEquals("APPROVED", latest.get(PROPERTY).status);
+    }
+
+    @Test
+    public void eventsAreCollapsedByCanonicalId() {
+        Map<PropertyId, Latest> latest = PublicationApprovedBatchFunction.collapse(List.of(
+                message("m1", "2024-01-01T09:00:00Z", "DECLINED", "usa/anytown/main-street/111"),
+                message("m2", "2024-01-01T10:00:00Z", "APPROVED", "USA/Anytown/Main Street/111")), failures);
+
+        assertEquals(List.of(PROPERTY), new ArrayList<>(latest.keySet()));
+        assertEquals("m2", latest.get(PROPERTY).messageId);
+    }
+
+    @Test
+    public void onEqualTimesTheLaterRecordWins() {
+        Map<PropertyId, Latest> latest = PublicationApprovedBatchFunction.collapse(List.of(
+                message("m1", "2024-01-01T10:00:00Z", "APPROVED", "usa/anytown/main-street/111"),
+                message("m2", "2024-01-01T10:00:00Z", "DECLINED", "usa/anytown/main-street/111")), failures);
+
+        assertEquals("m2", latest.get(PROPERTY).messageId);
+        assertEquals("DECLINED", latest.get(PROPERTY).status);
+    }
+
+    @Test
+    public void eventWithoutTimeLosesToATimedOne() {
+        Map<PropertyId, Latest> latest = PublicationApprovedBatchFunction.collapse(List.of(
+                message("m1", "2024-01-01T10:00:00Z", "APPROVED", "usa/anytown/main-street/111"),
+                message("m2", null, "DECLINED", "usa/anytown/main-street/111")), failures);
+
+        assertEquals("m1", latest.get(PROPERTY).messageId);
+    }
+
+    @Test
+    public void unreadableMessagesAreReportedAsFailures() {
+        List<SQSMessage> records = new ArrayList<>();
+        records.add(message("m1", "2024-01-01T10:00:00Z", "APPROVED", "usa/anytown/main-street/111"));
+        SQSMessage notJson = new SQSMessage();
+        notJson.setMessageId("m2");
+        notJson.setBody("{not json");
+        records.add(notJson);
+        records.add(message("m3", "2024-01-01T10:00:00Z", "APPROVED", "usa/anytown/main-street"));
+        records.add(message("m4", "2024-01-01T10:00:00Z", "APPROVED", "usa/anytown/elm-street/2"));
+
+        Map<PropertyId, Latest> latest = PublicationApprovedBatchFunction.collapse(records, failures);
+
+        assertEquals(List.of("m2", "m3"), failures.stream()
+                .map(SQSBatchResponse.BatchItemFailure::getItemIdentifier)
+                .collect(Collectors.toList()));
+        assertEquals(List.of("m1", "m4"), latest.values().stream()
+                .map(update -> update.messageId)
+                .collect(Collectors.toList()));
+    }
+
+    private static SQSMessage message(String id, String time, String result, String propertyId) {
+        SQSMessage message = new SQSMessage();
+        message.setMessageId(id);
+        message.setBody(String.format(EVENT, time == null ? "" : "\"time\": \"" + time + "\", ", result, propertyId));
+        return message;
+    }
+}
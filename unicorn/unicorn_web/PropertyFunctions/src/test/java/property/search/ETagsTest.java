@@ -0,0 +1,61 @@
+package property.search;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ETagsTest {
+
+    private static final String ETAG = ETags.of("[{\"city\":\"anytown\"}]");
+
+    @Test
+    public void matchesTheSameTag() {
+        assertTrue(ETags.matches(ETAG, ETAG));
+    }
+
+    @Test
+    public void matchesAnyTagOfAList() {
+        assertTrue(ETags.matches("\"other\", " + ETAG + " ,\"another\"", ETAG));
+    }
+
+    @Test
+    public void matchesWeakTags() {
+        assertTrue(ETags.matches("W/" + ETAG, ETAG));
+    }
+
+    @Test
+    public void matchesTheWildcard() {
+        assertTrue(ETags.matches("*", ETAG));
+    }
+
+    @Test
+    public void doesNotMatchOtherTagsOrNoHeader() {
+        assertFalse(ETags.matches("\"other\"", ETAG));
+        assertFalse(ETags.matches(ETAG.substring(1, ETAG.length() - 1), ETAG));
+        assertFalse(ETags.matches(null, ETAG));
+    }
+
+    @Test
+    public void tagDependsOnTheCharactersNotOnHowTheyWereHashed() {
+        ETags.Hasher hasher = new ETags.Hasher();
+        hasher.update("[{\"city\":");
+        hasher.update("\"anytown\"}]");
+
+        assertEquals(ETAG, hasher.etag());
+        assertNotEquals(ETAG, ETags.of("[{\"city\":\"othertown\"}]"));
+    }
+
+    @Test
+    public void readsIfNoneMatchWhateverItsCase() {
+        assertEquals(ETAG, ETags.ifNoneMatch(Map.of("if-none-match", ETAG)));
+        assertEquals(ETAG, ETags.ifNoneMatch(Map.of("If-None-Match", ETAG)));
+        assertNull(ETags.ifNoneMatch(Map.of("Accept", "*/*")));
+        assertNull(ETags.ifNoneMatch(null));
+    }
+}
@@ -0,0 +1,161 @@
+package property.search;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import property.dao.Property;
+import property.helper.Json;
+import property.search.PropertySearchFunction.SearchPage;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PropertySearchStreamFunctionTest {
+
+    private static final String REQUEST = "{\"httpMethod\": \"GET\", \"resource\": \"/search/{country}/{city}\", "
+            + "\"pathParameters\": {\"country\": \"usa\", \"city\": \"anytown\"}%s%s}";
+    private static final Map<String, AttributeValue> LAST_KEY = Map.of(
+            "PK", AttributeValue.fromS("property#usa#anytown"),
+            "SK", AttributeValue.fromS("main-street#112"));
+
+    private final List<Property> properties = new ArrayList<>();
+    private Map<String, AttributeValue> lastEvaluatedKey;
+    private RuntimeException failure;
+
+    private PropertySearchFunction search;
+    private PropertySearchStreamFunction function;
+
+    @Before
+    public void setUp() {
+        properties.add(property("Main Street", "111", "A \"quoted\" description\nover two lines"));
+        properties.add(property("Main Street", "112", "G\u00f6teborg style, with a \\ backslash"));
+        search = new PropertySearchFunction() {
+            @Override
+            public Map<String, AttributeValue> queryTable(String partitionkey, String sortKey, int limit,
+                                                          Map<String, AttributeValue> startKey,
+                                                          List<String> attributes, Consumer<Property> sink) {
+                if (failure != null) {
+                    throw failure;
+                }
+                properties.forEach(sink);
+                return lastEvaluatedKey;
+            }
+        };
+        search.cache = new SearchCache(partitionKey -> 0L, 0);
+        function = new PropertySearchStreamFunction();
+        function.search = search;
+    }
+
+    @Test
+    public void streamedResponseEqualsTheBufferedPage() throws Exception {
+        lastEvaluatedKey = LAST_KEY;
+
+        JsonNode response = invoke("", "");
+        SearchPage page = search.page(PropertySearchFunction.searchQuery(request("", "")));
+
+        assertEquals(200, response.get("statusCode").asInt());
+        assertEquals(page.body(), response.get("body").asText());
+        assertEquals(page.etag(), response.get("headers").get(ETags.ETAG_HEADER).asText());
+        assertEquals(SearchCursor.encode(LAST_KEY),
+                response.get("headers").get(PropertySearchFunction.NEXT_CURSOR_HEADER).asText());
+    }
+
+    @Test
+    public void streamedSummaryEqualsTheBufferedPage() throws Exception {
+        String view = ", \"queryStringParameters\": {\"view\": \"summary\"}";
+
+        JsonNode response = invoke(view, "");
+        SearchPage page = search.page(PropertySearchFunction.searchQuery(request(view, "")));
+
+        assertEquals(page.body(), response.get("body").asText());
+        assertEquals(page.etag(), response.get("headers").get(ETags.ETAG_HEADER).asText());
+        assertFalse(response.get("headers").has(PropertySearchFunction.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void emptyResultIsAnEmptyArray() throws Exception {
+        properties.clear();
+
+        JsonNode response = invoke("", "");
+
+        assertEquals("[]", response.get("body").asText());
+        assertEquals(ETags.of("[]"), response.get("headers").get(ETags.ETAG_HEADER).asText());
+    }
+
+    @Test
+    public void cachedPageIsStreamedUnchanged() throws Exception {
+        search.cache = new SearchCache(partitionKey -> 0L, 10);
+
+        JsonNode first = invoke("", "");
+        properties.clear();
+        JsonNode cached = invoke("", "");
+
+        assertEquals(first.get("body").asText(), cached.get("body").asText());
+        assertEquals(first.get("headers").get(ETags.ETAG_HEADER), cached.get("headers").get(ETags.ETAG_HEADER));
+    }
+
+    @Test
+    public void matchingTagIsAnsweredWithNotModified() throws Exception {
+        String etag = invoke("", "").get("headers").get(ETags.ETAG_HEADER).asText();
+
+        JsonNode response = invoke("", ", \"headers\": {\"If-None-Match\": " + Json.write(etag) + "}");
+
+        assertEquals(304, response.get("statusCode").asInt());
+        assertFalse(response.has("body"));
+        assertEquals(etag, response.get("headers").get(ETags.ETAG_HEADER).asText());
+    }
+
+    @Test
+    public void searchFailingBeforeTheFirstPropertyIsAServerError() throws Exception {
+        failure = new IllegalStateException("throttled");
+
+        JsonNode response = invoke("", "");
+
+        assertEquals(500, response.get("statusCode").asInt());
+        assertEquals(PropertySearchFunction.CANNOT_PROCESS, response.get("body").asText());
+    }
+
+    @Test
+    public void invalidRequestIsABadRequest() throws Exception {
+        JsonNode response = invoke(", \"queryStringParameters\": {\"limit\": \"0\"}", "");
+
+        assertEquals(400, response.get("statusCode").asInt());
+        assertTrue(response.get("body").asText().contains("Input Invalid"));
+    }
+
+    private JsonNode invoke(String query, String headers) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        function.handleRequest(new ByteArrayInputStream(
+                String.format(REQUEST, query, headers).getBytes(StandardCharsets.UTF_8)), output, null);
+        return Json.mapper().readTree(output.toByteArray());
+    }
+
+    private static APIGatewayProxyRequestEvent request(String query, String headers) throws IOException {
+        return Json.mapper().readValue(String.format(REQUEST, query, headers), APIGatewayProxyRequestEvent.class);
+    }
+
+    private static Property property(String street, String number, String description) {
+        Property property = new Property();
+        property.setCountry("USA");
+        property.setCity("Anytown");
+        property.setStreet(street);
+        property.setPropertyNumber(number);
+        property.setDescription(description);
+        property.setStatus(Property.APPROVED);
+        return property;
+    }
+}
@@ -0,0 +1,107 @@
+package property.search;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import property.search.PropertySearchFunction.SearchPage;
+import property.search.PropertySearchFunction.SearchQuery;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SearchCacheTest {
+
+    private final List<String> versionReads = new ArrayList<>();
+
+    @Test
+    public void pageIsServedAtTheVersionItWasReadAt() {
+        SearchCache cache = new SearchCache(this::readVersion, 10);
+        SearchQuery query = query("property#usa#anytown", null);
+        SearchPage page = page();
+
+        cache.put(query, 1, page);
+
+        assertSame(page, cache.get(query, 1));
+        assertNull(cache.get(query, 2));
+    }
+
+    @Test
+    public void pagesDifferByCursorAndProjection() {
+        SearchCache cache = new SearchCache(this::readVersion, 10);
+        cache.put(query("property#usa#anytown", null), 1, page());
+
+        assertNull(cache.get(query("property#usa#anytown", "main-street#111"), 1));
+        assertNull(cache.get(new SearchQuery("property#usa#anytown", "", false, 10, null,
+                SearchProjection.SUMMARY), 1));
+    }
+
+    @Test
+    public void versionIsReadOncePerCheckInterval() {
+        SearchCache cache = new SearchCache(this::readVersion, 10);
+
+        assertEquals(7, cache.version("property#usa#anytown"));
+        assertEquals(7, cache.version("property#usa#anytown"));
+
+        assertEquals(List.of("property#usa#anytown"), versionReads);
+    }
+
+    @Test
+    public void versionStampsAreBoundedLikeThePages() {
+        SearchCache cache = new SearchCache(this::readVersion, 2);
+
+        cache.version("property#usa#a");
+        cache.version("property#usa#b");
+        cache.version("property#usa#c");
+        cache.version("property#usa#c");
+        cache.version("property#usa#a");
+
+        assertEquals(List.of("property#usa#a", "property#usa#b", "property#usa#c", "property#usa#a"),
+                versionReads);
+    }
+
+    @Test
+    public void leastRecentlyUsedPageIsEvicted() {
+        SearchCache cache = new SearchCache(this::readVersion, 2);
+        SearchQuery a = query("property#usa#a", null);
+        SearchQuery b = query("property#usa#b", null);
+        SearchQuery c = query("property#usa#c", null);
+        SearchPage page = page();
+
+        cache.put(a, 1, page);
+        cache.put(b, 1, page);
+        cache.get(a, 1);
+        cache.put(c, 1, page);
+
+        assertSame(page, cache.get(a, 1));
+        assertNull(cache.get(b, 1));
+        assertSame(page, cache.get(c, 1));
+    }
+
+    @Test
+    public void noEntriesDisablesTheCache() {
+        assertFalse(new SearchCache(this::readVersion, 0).enabled());
+        assertTrue(new SearchCache(this::readVersion, 1).enabled());
+    }
+
+    private long readVersion(String partitionKey) {
+        versionReads.add(partitionKey);
+        return 7;
+    }
+
+    private static SearchQuery query(String partitionKey, String startSk) {
+        Map<String, AttributeValue> startKey = startSk == null ? null
+                : Map.of("PK", AttributeValue.fromS(partitionKey), "SK", AttributeValue.fromS(startSk));
+        return new SearchQuery(partitionKey, "", false, 10, startKey, SearchProjection.FULL);
+    }
+
+    private static SearchPage page() {
+        return new SearchPage(List.of(), null, SearchProjection.FULL);
+    }
+}
@@ -0,0 +1,48 @@
+package property.search;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+public class SearchCursorTest {
+
+    @Test
+    public void decodeReturnsTheEncodedKey() {
+        Map<String, AttributeValue> key = Map.of(
+                "PK", AttributeValue.fromS("property#usa#anytown"),
+                "SK", AttributeValue.fromS("main-street#111"),
+                "ApprovedPK", AttributeValue.fromS("property#usa#anytown"));
+
+        assertEquals(key, SearchCursor.decode(SearchCursor.encode(key)));
+    }
+
+    @Test
+    public void cursorIsUrlSafe() {
+        String cursor = SearchCursor.encode(Map.of("PK", AttributeValue.fromS("property#???#>>>")));
+
+        assertFalse(cursor.contains("+"));
+        assertFalse(cursor.contains("/"));
+        assertFalse(cursor.contains("="));
+    }
+
+    @Test
+    public void invalidCursorsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode(encode("not json")));
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode(encode("{}")));
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode(encode("[\"PK\"]")));
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode(encode("{\"PK\": {\"S\": \"x\"}}")));
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,83 @@
+package property.search;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import property.dao.Property;
+import property.helper.Json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class SearchProjectionTest {
+
+    @Test
+    public void defaultIsTheFullProperty() {
+        assertSame(SearchProjection.FULL, SearchProjection.parse(null, null));
+        assertSame(SearchProjection.FULL, SearchProjection.parse("full", null));
+        assertTrue(SearchProjection.FULL.attributes.isEmpty());
+    }
+
+    @Test
+    public void summaryView() {
+        assertSame(SearchProjection.SUMMARY, SearchProjection.parse("summary", null));
+    }
+
+    @Test
+    public void fieldsAreMappedToAttributes() {
+        SearchProjection projection = SearchProjection.parse(null, "city, propertyNumber,status");
+
+        assertEquals(List.of("city", "number", "status"), projection.attributes);
+    }
+
+    @Test
+    public void fieldsWithTheSameSetShareTheirName() {
+        SearchProjection projection = SearchProjection.parse(null, "street,city,street");
+
+        assertEquals("fields:city,street", projection.name);
+        assertEquals(projection.name, SearchProjection.parse(null, "city,street").name);
+        assertEquals(List.of("street", "city"), projection.attributes);
+    }
+
+    @Test
+    public void invalidParametersAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> SearchProjection.parse("compact", null));
+        assertThrows(IllegalArgumentException.class, () -> SearchProjection.parse(null, "city,owner"));
+        assertThrows(IllegalArgumentException.class, () -> SearchProjection.parse(null, "pk"));
+        assertThrows(IllegalArgumentException.class, () -> SearchProjection.parse("summary", "city"));
+    }
+
+    @Test
+    public void fieldsLeaveOutWhatWasNotRead() throws Exception {
+        Property property = new Property();
+        property.setCity("anytown");
+        property.setStreet("main-street");
+
+        JsonNode item = Json.mapper().readTree(SearchProjection.parse(null, "city,street").write(List.of(property)))
+                .get(0);
+
+        assertEquals("anytown", item.get("city").asText());
+        assertEquals("main-street", item.get("street").asText());
+        assertFalse(item.has("description"));
+        assertFalse(item.has("listprice"));
+    }
+
+    @Test
+    public void summaryWritesTheFirstImageAsThumbnail() throws Exception {
+        Property property = new Property();
+        property.setCity("anytown");
+        property.setImages(List.of("first.jpg", "second.jpg"));
+
+        JsonNode item = Json.mapper().readTree(SearchProjection.SUMMARY.write(List.of(property))).get(0);
+
+        assertEquals("anytown", item.get("city").asText());
+        assertEquals("first.jpg", item.get("thumbnail").asText());
+        assertFalse(item.has("images"));
+    }
+}